@@ -0,0 +1,723 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+public class AI {
+
+  private Evaluator evaluator;
+
+  //Reused for every search so a search does not allocate
+  private final SearchState root;
+  private final MoveGenerator moveGenerator;
+  private final InputType[] pathMoves;
+  private final int[] pathRows;
+  private final InputPlanner inputPlanner;
+  private final int[] frameInputs;
+  private final int[] frameStates;
+  private int placements;
+  private final double[] placementScores;
+  private final int[] firstPly;  //Placement indices, lowest first
+
+  /*
+   * Two piece lookahead. When the next piece is known, the lookaheadWidth best placements of the
+   * current piece are expanded with every placement of the next piece, and the best pair wins.
+   * The width bounds the cost of a search, 0 turns the lookahead off.
+   */
+  private int lookaheadWidth;
+  private final int[] candidates;  //Placement indices, best first ply score first
+  private final double[] candidateScores;
+  private int candidateCount;
+
+  /*
+   * Expectimax. The piece after the preview piece is not known yet, but every type is equally
+   * likely, so a placement can be scored by the average over the 7 types of the best placement
+   * that follows it. Every extra depth adds one such unknown piece, expanding the lookaheadWidth
+   * best placements at each level.
+   *
+   * The search is anytime: it always has a best move, the one of the first ply, and deepens from
+   * there (the next piece, then one unknown piece at a time up to expectimaxDepth). A depth that
+   * does not finish within the time budget of the spawn is dropped and the move of the last
+   * finished depth is used. The first ply is scored lowest placements first, a few at a time, and
+   * stops once the time is up with the best of those scored. The budget also covers planning the
+   * frame inputs: the search gets what is left after the recent cost of the planner, and a plan
+   * that is not done by the end of the budget is dropped for the path of moves. Both stop a reserve
+   * before the end, for the step that was running when the time ran out. See AIBudgetTest.
+   */
+  public static final int MAX_EXPECTIMAX_DEPTH = 3;
+  private static final int FIRST_PLY_CHUNK = 8;  //Placements of the first ply scored between checks of the time
+  private int expectimaxDepth;
+  private long timeBudget;  //Nanoseconds per spawn, 0 for no limit
+  private final double budgetReserve = 0.1;  //Part of the budget kept for finishing the step that ran out of time and building the path
+  private long planningTime;  //Recent worst time of planFrames, in nanoseconds. It decays so one slow plan is forgotten.
+  private long budgetEnd;  //System.nanoTime() the search and the frame plan of the spawn give up at, the budget less the reserve
+  private int searchDepth;  //Unknown pieces the workers are searching
+  private long deadline;
+  private volatile boolean aborted;
+
+  /*
+   * Values already computed, by Zobrist key. Leaves are keyed by the board after the piece locked,
+   * the piece and the lines cleared before it. Expectimax averages are keyed by the board, the lines
+   * cleared and the depth. The values only depend on the key and the search settings, so the table
+   * is kept from one spawn to the next and cleared when a setting changes.
+   */
+  private final TranspositionTable table;
+  private int searchNumber;
+
+  //Placements chosen before, by board shape, null when off. Kept across games and settings, see PlacementCache.
+  private PlacementCache placementCache;
+
+  //Each worker has its own scratch boards. The sequential search only has one worker and no pool.
+  private final Worker[] workers;
+  private final ForkJoinPool pool;
+  private final SearchTask searchTask;
+  private boolean expanding;  //Which ply the workers are running
+  private int workItems;
+
+  /*
+   * Background planning. The search for a piece starts on the planner thread when the piece
+   * before it locks, so it runs during the spawn delay instead of inside a draw() frame.
+   * Fallback: if the plan for the current piece is still not ready planDeadline frames after
+   * it spawned, the piece is soft dropped where it is and the late plan is ignored.
+   */
+  private final ExecutorService planner;  //null when planning synchronously
+  private final Plan[] plans;
+  private final int planDeadline = 10;
+  private GameEngine waitingEngine;
+  private int waitingPiece;
+  private int framesWaited;
+  private Plan appliedPlan;
+
+
+  public AI() {
+    this(1, false);
+  }
+
+  //threads is the number of workers the search is split across, 1 runs it on the calling thread
+  public AI(int threads, boolean planAsync) {
+
+    this.evaluator = new LinearEvaluator();
+    this.root = new SearchState();
+    this.moveGenerator = new MoveGenerator();
+    this.pathMoves = new InputType[MoveGenerator.MAX_STATES];
+    this.pathRows = new int[MoveGenerator.MAX_STATES];
+    this.inputPlanner = new InputPlanner();
+    this.frameInputs = new int[InputPlanner.MAX_FRAMES];
+    this.frameStates = new int[InputPlanner.MAX_FRAMES];
+    this.placements = 0;
+    this.placementScores = new double[MoveGenerator.MAX_STATES];
+    this.firstPly = new int[MoveGenerator.MAX_STATES];
+
+    this.lookaheadWidth = 0;
+    this.candidates = new int[MoveGenerator.MAX_STATES];
+    this.candidateScores = new double[MoveGenerator.MAX_STATES];
+    this.candidateCount = 0;
+
+    this.expectimaxDepth = 0;
+    this.timeBudget = 0;
+    this.planningTime = 0;
+    this.budgetEnd = 0;
+    this.searchDepth = 0;
+    this.deadline = 0;
+    this.aborted = false;
+    this.table = new TranspositionTable(16);
+    this.searchNumber = 0;
+    this.placementCache = null;
+
+    this.workers = new Worker[Math.max(threads, 1)];
+    for (int i = 0; i < this.workers.length; i++) {
+      this.workers[i] = new Worker(i);
+    }
+    this.pool = this.workers.length > 1 ? new ForkJoinPool(this.workers.length) : null;
+    this.searchTask = new SearchTask();
+    this.expanding = false;
+    this.workItems = 0;
+
+    if (planAsync) {
+      this.planner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "AI planner");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.plans = new Plan[] {new Plan(), new Plan()};
+    } else {
+      this.planner = null;
+      this.plans = new Plan[0];
+    }
+    this.waitingEngine = null;
+    this.waitingPiece = -1;
+    this.framesWaited = 0;
+    this.appliedPlan = null;
+  }
+
+
+  //Returns the index of the best placement of root in the move generator, or -1 if the piece can not move
+  private int getAIResponse() {
+    budgetEnd = timeBudget > 0 ? System.nanoTime() + timeBudget - (long) (timeBudget * budgetReserve) : Long.MAX_VALUE;
+    if (placementCache == null)
+      return search();
+
+    Board board = root.getBoard();
+    long key = PlacementCache.key(board, root.getType(), root.getNext());
+    int cached = placementCache.get(key);
+    if (cached != PlacementCache.NONE) {
+      placements = moveGenerator.generate(root);
+      int placement = findPlacement(PlacementCache.getOrientation(cached), PlacementCache.getX(cached), PlacementCache.getY(board, cached));
+      if (placement >= 0)
+        return placement;
+
+      //Another board with the same shape, where the piece can not get to the placement
+      placementCache.reject(key);
+    }
+
+    int best = search();
+    if (best >= 0)
+      placementCache.put(key, PlacementCache.encode(board, moveGenerator.getPlacementOrientation(best),
+        moveGenerator.getPlacementX(best), moveGenerator.getPlacementY(best)));
+    return best;
+  }
+
+  //Searches from root. Returns the index of the best placement in the move generator, or -1 if the piece can not move
+  private int search() {
+    deadline = timeBudget > 0 ? budgetEnd - planningTime : Long.MAX_VALUE;
+    searchNumber++;
+    placements = moveGenerator.generate(root);
+    orderFirstPly();
+    aborted = false;
+    runWorkers(false, placements);
+
+    //A strict comparison keeps the lowest placement index on ties, however the work was split
+    double bestScore = -99999999;
+    int best = -1;
+    for (int i = 0; i < placements; i++) {
+      if (placementScores[i] > bestScore) {
+        bestScore = placementScores[i];
+        best = i;
+      }
+    }
+
+    if (lookaheadWidth == 0 || aborted)
+      return best;
+
+    candidateCount = selectTop(placementScores, placements, lookaheadWidth, candidates);
+
+    //Without a known next piece the search starts with an unknown one
+    for (int depth = root.getNext() >= 0 ? 0 : 1; depth <= expectimaxDepth; depth++) {
+      if (System.nanoTime() > deadline)
+        break;
+
+      searchDepth = depth;
+      aborted = false;
+      runWorkers(true, candidateCount);
+      if (aborted)
+        break;
+
+      //Candidates are in first ply order, so ties go to the better first placement
+      bestScore = -99999999;
+      for (int c = 0; c < candidateCount; c++) {
+        if (candidateScores[c] > bestScore) {
+          bestScore = candidateScores[c];
+          best = candidates[c];
+        }
+      }
+    }
+
+    return best;
+  }
+
+  private void runWorkers(boolean expanding, int workItems) {
+    this.expanding = expanding;
+    this.workItems = workItems;
+
+    if (pool == null) {
+      workers[0].search(0, workItems);
+    } else {
+      searchTask.reinitialize();
+      pool.invoke(searchTask);
+    }
+  }
+
+  //Writes the indices of the width best scores to top, sorted best first (lowest index first on ties). Returns how many were written.
+  private static int selectTop(double[] scores, int count, int width, int[] top) {
+    int selected = 0;
+    for (int i = 0; i < count; i++) {
+      double score = scores[i];
+      if (selected == width && score <= scores[top[selected - 1]])
+        continue;
+
+      int c = Math.min(selected, width - 1);
+      while (c > 0 && score > scores[top[c - 1]]) {
+        top[c] = top[c - 1];
+        c--;
+      }
+      top[c] = i;
+      if (selected < width)
+        selected++;
+    }
+    return selected;
+  }
+
+  //Sorts the placements of root into firstPly, lowest first, and marks them all unscored
+  private void orderFirstPly() {
+    for (int i = 0; i < placements; i++) {
+      int y = moveGenerator.getPlacementY(i);
+      int c = i;
+      while (c > 0 && moveGenerator.getPlacementY(firstPly[c - 1]) < y) {
+        firstPly[c] = firstPly[c - 1];
+        c--;
+      }
+      firstPly[c] = i;
+      placementScores[i] = -99999999;
+    }
+  }
+
+  //Index of a placement in the move generator, or -1 if the piece can not reach it
+  private int findPlacement(int orientation, int x, int y) {
+    for (int i = 0; i < placements; i++) {
+      if (moveGenerator.getPlacementOrientation(i) == orientation && moveGenerator.getPlacementX(i) == x && moveGenerator.getPlacementY(i) == y)
+        return i;
+    }
+    return -1;
+  }
+
+  //Plans the frame inputs that take the piece of root to a placement of the move generator. Returns the number of frames.
+  private int planFrames(int placement, int fallTimer, int fallRate, int[] inputs, int[] states) {
+    long start = System.nanoTime();
+    int frames = inputPlanner.plan(root, fallTimer, fallRate, moveGenerator.getPlacementOrientation(placement), 
+      moveGenerator.getPlacementX(placement), moveGenerator.getPlacementY(placement), budgetEnd, inputs, states);
+    //A plan that ran out of time only shows how long it had, so the next one gets twice that (at
+    //least an eighth of the budget). Plans never get more than half the budget, so a slow one can
+    //not leave the next search no time at all.
+    long time = System.nanoTime() - start;
+    if (frames == 0 && System.nanoTime() > budgetEnd)
+      time = Math.max(2 * Math.max(time, planningTime), timeBudget / 8);
+    planningTime = Math.min(Math.max(time, planningTime - planningTime / 16), timeBudget / 2);
+    return frames;
+  }
+
+  //Puts the current piece at a placement of the move generator and locks it
+  private void placeCurrentPiece(SearchState state, int placement) {
+    state.copyFrom(root);
+    state.setPiece(root.getType(), moveGenerator.getPlacementOrientation(placement), moveGenerator.getPlacementX(placement), moveGenerator.getPlacementY(placement));
+    state.lock();
+  }
+
+
+  //Scores one range of the placements, or expands one range of the lookahead candidates
+  @SuppressWarnings("serial")
+  private class Worker extends RecursiveAction {
+    private final int index;
+    private final SearchState scratch;
+    private final SearchState afterFirst;
+    private final BoardFeatures features;
+    private final Ply[] plies;  //Scratch for every level below the first ply
+
+    //Boards missing from the table, scored in one call to the evaluator
+    private final float[] batch;
+    private final double[] batchScores;
+    private final int[] batchPlacements;
+    private final long[] batchKeys;
+
+    private long probes;
+    private long hits;
+
+    public Worker(int index) {
+      this.index = index;
+      this.scratch = new SearchState();
+      this.afterFirst = new SearchState();
+      this.features = new BoardFeatures();
+      this.plies = new Ply[MAX_EXPECTIMAX_DEPTH + 1];
+      for (int i = 0; i < this.plies.length; i++) {
+        this.plies[i] = new Ply();
+      }
+
+      this.batch = new float[MoveGenerator.MAX_STATES * BoardFeatures.COUNT];
+      this.batchScores = new double[MoveGenerator.MAX_STATES];
+      this.batchPlacements = new int[MoveGenerator.MAX_STATES];
+      this.batchKeys = new long[MoveGenerator.MAX_STATES];
+
+      this.probes = 0;
+      this.hits = 0;
+    }
+
+    @Override
+    protected void compute() {
+      search(workItems * index / workers.length, workItems * (index + 1) / workers.length);
+    }
+
+    public void search(int from, int to) {
+      if (expanding) {
+        for (int i = from; i < to; i++) {
+          candidateScores[i] = expand(candidates[i]);
+        }
+      } else {
+        //Every worker scores its first chunk, so there is always a move
+        for (int i = from; i < to; i += FIRST_PLY_CHUNK) {
+          if (i > from && (aborted || System.nanoTime() > deadline)) {
+            aborted = true;
+            return;
+          }
+          score(root, moveGenerator, firstPly, i, Math.min(i + FIRST_PLY_CHUNK, to), 0, scratch, placementScores);
+        }
+      }
+    }
+
+    /*
+     * Scores the placements from to to of the piece of start into scores, looking them up in the
+     * table first. With an order, from and to index the order instead. lines were cleared earlier
+     * in the search. They are no longer on the board, so they are added back in. placed is used as scratch.
+     */
+    private void score(SearchState start, MoveGenerator moves, int[] order, int from, int to, int lines, SearchState placed, double[] scores) {
+      Board board = start.getBoard();
+      int type = start.getType();
+      int missing = 0;
+
+      for (int k = from; k < to; k++) {
+        int j = order != null ? order[k] : k;
+        int orientation = moves.getPlacementOrientation(j);
+        int x = moves.getPlacementX(j);
+        int y = moves.getPlacementY(j);
+        long key = board.hashWith(type, orientation, x, y) ^ Zobrist.piece(type, orientation, x, y) ^ Zobrist.lines(lines);
+
+        probes++;
+        double value = table.probe(key);
+        if (!Double.isNaN(value)) {
+          hits++;
+          scores[j] = value;
+          continue;
+        }
+
+        placed.copyFrom(start);
+        placed.setPiece(type, orientation, x, y);
+        placed.lock();
+        features.compute(placed.getBoard(), type, orientation, y);
+        features.add(BoardFeatures.LINES, lines);
+        features.copyTo(batch, missing * BoardFeatures.COUNT);
+        batchPlacements[missing] = j;
+        batchKeys[missing] = key;
+        missing++;
+      }
+
+      evaluator.evaluate(batch, missing, batchScores, 0);
+      for (int m = 0; m < missing; m++) {
+        scores[batchPlacements[m]] = batchScores[m];
+        table.store(batchKeys[m], batchScores[m], 0, searchNumber);
+      }
+    }
+
+    //Score of a placement of the current piece, searching searchDepth unknown pieces after it
+    private double expand(int placement) {
+      if (aborted || System.nanoTime() > deadline) {
+        aborted = true;
+        return 0;
+      }
+
+      placeCurrentPiece(afterFirst, placement);
+      Board board = afterFirst.getBoard();
+      int lines = board.clearLines(board.getFullLines());
+
+      if (root.getNext() < 0)
+        return average(afterFirst, lines, searchDepth, 0);
+
+      afterFirst.setPiece(root.getNext(), 0, GameEngine.PIECE_SPAWN_X, GameEngine.PIECE_SPAWN_Y);
+      return best(afterFirst, lines, searchDepth, 0);
+    }
+
+    /*
+     * Best score of the piece of start, with depth unknown pieces after it. lines were cleared
+     * earlier in the search. They are no longer on the board, so they are added back in.
+     */
+    private double best(SearchState start, int lines, int depth, int level) {
+      Ply ply = plies[level];
+      int count = ply.moves.generate(start);
+      score(start, ply.moves, null, 0, count, lines, ply.placed, ply.scores);
+
+      double bestScore = -99999999;
+      if (depth == 0) {
+        for (int j = 0; j < count; j++) {
+          if (ply.scores[j] > bestScore)
+            bestScore = ply.scores[j];
+        }
+        return bestScore;
+      }
+
+      int expanded = selectTop(ply.scores, count, lookaheadWidth, ply.top);
+      for (int k = 0; k < expanded; k++) {
+        place(ply, start, ply.top[k]);
+        Board board = ply.placed.getBoard();
+        int cleared = board.clearLines(board.getFullLines());
+
+        double score = average(ply.placed, lines + cleared, depth, level + 1);
+        if (score > bestScore)
+          bestScore = score;
+      }
+      return bestScore;
+    }
+
+    //Average over the 7 piece types of the best score, on the board of placed. Stops the search once the time is up.
+    private double average(SearchState placed, int lines, int depth, int level) {
+      if (aborted || System.nanoTime() > deadline) {
+        aborted = true;
+        return 0;
+      }
+
+      long key = placed.getBoard().hash() ^ Zobrist.lines(lines) ^ Zobrist.depth(depth);
+      probes++;
+      double memo = table.probe(key);
+      if (!Double.isNaN(memo)) {
+        hits++;
+        return memo;
+      }
+
+      SearchState start = plies[level].start;
+      start.copyFrom(placed);
+
+      double total = 0;
+      for (int type = 0; type < PieceShape.TYPES; type++) {
+        start.setPiece(type, 0, GameEngine.PIECE_SPAWN_X, GameEngine.PIECE_SPAWN_Y);
+        total += best(start, lines, depth - 1, level);
+        if (aborted || System.nanoTime() > deadline) {
+          aborted = true;
+          return 0;
+        }
+      }
+
+      double value = total / PieceShape.TYPES;
+      table.store(key, value, depth, searchNumber);
+      return value;
+    }
+
+    //Puts the piece of start at a placement of the ply's move generator and locks it
+    private void place(Ply ply, SearchState start, int placement) {
+      ply.placed.copyFrom(start);
+      ply.placed.setPiece(start.getType(), ply.moves.getPlacementOrientation(placement), ply.moves.getPlacementX(placement), ply.moves.getPlacementY(placement));
+      ply.placed.lock();
+    }
+  }
+
+  //Scratch for one level of the lookahead
+  private class Ply {
+    private final SearchState start;
+    private final SearchState placed;
+    private final MoveGenerator moves;
+    private final double[] scores;
+    private final int[] top;
+
+    public Ply() {
+      this.start = new SearchState();
+      this.placed = new SearchState();
+      this.moves = new MoveGenerator();
+      this.scores = new double[MoveGenerator.MAX_STATES];
+      this.top = new int[MoveGenerator.MAX_STATES];
+    }
+  }
+
+  //Runs every worker on the pool
+  @SuppressWarnings("serial")
+  private class SearchTask extends RecursiveAction {
+    @Override
+    protected void compute() {
+      for (Worker worker : workers) {
+        worker.reinitialize();
+      }
+      invokeAll(workers);
+    }
+  }
+
+
+  //A search for one piece, run on the planner thread
+  private class Plan implements Runnable {
+    private final SearchState start;
+    private final InputType[] moves;
+    private final int[] rows;
+    private int count;
+    private final int[] frameInputs;
+    private final int[] frameStates;
+    private int frames;
+    private int fallTimer;  //The engine's gravity when the plan starts
+    private int fallRate;
+    private GameEngine engine;
+    private int piece;  //Spawn number of the piece in the engine
+    private Future<?> future;
+
+    public Plan() {
+      this.start = new SearchState();
+      this.moves = new InputType[MoveGenerator.MAX_STATES];
+      this.rows = new int[MoveGenerator.MAX_STATES];
+      this.count = 0;
+      this.frameInputs = new int[InputPlanner.MAX_FRAMES];
+      this.frameStates = new int[InputPlanner.MAX_FRAMES];
+      this.frames = 0;
+      this.fallTimer = 0;
+      this.fallRate = 0;
+      this.engine = null;
+      this.piece = -1;
+      this.future = null;
+    }
+
+    @Override
+    public void run() {
+      root.copyFrom(start);
+      int best = getAIResponse();
+      count = best >= 0 ? moveGenerator.getPath(best, moves, rows) : 0;
+      frames = best >= 0 ? planFrames(best, fallTimer, fallRate, frameInputs, frameStates) : 0;
+    }
+
+    //Hands the plan to the engine. The frame inputs are only exact if the piece and gravity did not move since the plan started.
+    public void apply() {
+      engine.setAIPath(moves, rows, count);
+      if (frames > 0 && engine.getFallTimer() == fallTimer && engine.getFallRate() == fallRate &&
+        engine.getPieceOrientation() == start.getOrientation() && engine.getPieceX() == start.getX() && engine.getPieceY() == start.getY())
+        engine.setAIFrames(frameInputs, frameStates, frames);
+    }
+
+    public boolean isRunning() {
+      return future != null && !future.isDone();
+    }
+
+    public boolean isFor(GameEngine engine, int piece) {
+      return future != null && this.engine == engine && this.piece == piece;
+    }
+  }
+
+
+  //Generates the input queue given a piece position and rotation, on the calling thread
+  public void generateInputQueue(GameEngine engine) {
+    root.copyFrom(engine);
+    int best = getAIResponse();
+    int count = best >= 0 ? moveGenerator.getPath(best, pathMoves, pathRows) : 0;
+    engine.setAIPath(pathMoves, pathRows, count);
+
+    int frames = best >= 0 ? planFrames(best, engine.getFallTimer(), engine.getFallRate(), frameInputs, frameStates) : 0;
+    if (frames > 0)
+      engine.setAIFrames(frameInputs, frameStates, frames);
+  }
+
+  //Starts planning the piece that spawns after the current one locked. Called when the current piece locks.
+  public void planNextPiece(GameEngine engine) {
+    Plan plan = getFreePlan();
+    if (plan == null)
+      return;
+
+    plan.start.copyNextSpawnFrom(engine);
+    plan.fallTimer = engine.getFallTimer();
+    plan.fallRate = engine.getNextFallRate();
+    submit(plan, engine, engine.getPiecesSpawned() + 1);
+  }
+
+  //Hands a finished plan for the current piece to the engine without blocking. Called every frame until the engine has a path.
+  public void applyPlan(GameEngine engine) {
+    int piece = engine.getPiecesSpawned();
+
+    //The piece left the inputs of the plan that was applied, so that plan is dropped and the piece is planned again from where it is
+    if (engine.isAIPathLost() && appliedPlan != null && appliedPlan.isFor(engine, piece)) {
+      appliedPlan.piece = -1;
+      appliedPlan = null;
+      waitingPiece = -1;
+    }
+
+    if (engine != waitingEngine || piece != waitingPiece) {
+      waitingEngine = engine;
+      waitingPiece = piece;
+      framesWaited = 0;
+
+      //Nothing was planned for this piece (the AI just took over), so plan it from where it is
+      if (!hasPlan(engine, piece)) {
+        Plan plan = getFreePlan();
+        if (plan != null) {
+          plan.start.copyFrom(engine);
+          plan.fallTimer = engine.getFallTimer();
+          plan.fallRate = engine.getFallRate();
+          submit(plan, engine, piece);
+        }
+      }
+    }
+
+    for (Plan plan : plans) {
+      if (plan.isFor(engine, piece) && !plan.isRunning()) {
+        plan.apply();
+        appliedPlan = plan;
+        return;
+      }
+    }
+
+    framesWaited++;
+    if (framesWaited > planDeadline) {
+      //Fallback, see the planner fields
+      engine.setAIPath(pathMoves, pathRows, 0);
+    }
+  }
+
+  private void submit(Plan plan, GameEngine engine, int piece) {
+    plan.engine = engine;
+    plan.piece = piece;
+    plan.future = planner.submit(plan);
+  }
+
+  private Plan getFreePlan() {
+    for (Plan plan : plans) {
+      if (!plan.isRunning())
+        return plan;
+    }
+    return null;
+  }
+
+  private boolean hasPlan(GameEngine engine, int piece) {
+    for (Plan plan : plans) {
+      if (plan.isFor(engine, piece))
+        return true;
+    }
+    return false;
+  }
+
+  //Only call the setters while no search is running
+  public void setEvaluator(Evaluator evaluator) {
+    this.evaluator = evaluator;
+    this.table.clear();
+  }
+
+  public void setLookaheadWidth(int lookaheadWidth) {
+    this.lookaheadWidth = lookaheadWidth;
+    this.table.clear();
+  }
+
+  //Forgets every value computed so far, so the next search starts from scratch. Only call it while no search is running.
+  public void clearTable() {
+    this.table.clear();
+  }
+
+  //depth is the number of unknown pieces searched after the preview piece, up to MAX_EXPECTIMAX_DEPTH
+  public void setExpectimaxDepth(int depth) {
+    this.expectimaxDepth = Math.max(0, Math.min(depth, MAX_EXPECTIMAX_DEPTH));
+  }
+
+  //Nanoseconds a search may take, 0 for no limit
+  public void setTimeBudget(long nanos) {
+    this.timeBudget = nanos;
+  }
+
+  //cache is null to turn the placement cache off
+  public void setPlacementCache(PlacementCache cache) {
+    this.placementCache = cache;
+  }
+
+  public PlacementCache getPlacementCache() {
+    return this.placementCache;
+  }
+
+  //Share of the values looked up in the transposition table that were found, over every search so far
+  public double getTableHitRate() {
+    long probes = 0;
+    long hits = 0;
+    for (Worker worker : workers) {
+      probes += worker.probes;
+      hits += worker.hits;
+    }
+    return probes == 0 ? 0 : (double) hits / probes;
+  }
+
+  public boolean isPlanningAsync() {
+    return planner != null;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/*
+ * Checks that the AI keeps to its time budget: for every budget, the 99th percentile of its
+ * decisions (the search and the frame plan, GameEngine to setAIFrames) has to be within it.
+ * Games are played from every few levels, so the plans go from long slow drops to fast falls.
+ *
+ * Decisions are timed in CPU time of the thread when the JVM can measure it. A machine that takes
+ * the CPU away from the thread in the middle of a decision (a busy desktop, a virtual machine)
+ * makes it late without the AI doing anything wrong, and would fail the test at random.
+ *
+ * Compile and run from the sketch folder (only the .java tabs are needed):
+ *   javac -d simulator *.java
+ *   java -cp simulator AIBudgetTest 8000000 4000000 2000000
+ */
+public class AIBudgetTest {
+
+  private static final int GAMES = 20;
+  private static final int PIECES = 150;
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) {
+    long[] budgets = {8000000, 4000000, 2000000};
+    if (args.length > 0) {
+      budgets = new long[args.length];
+      for (int i = 0; i < args.length; i++) {
+        budgets[i] = Long.parseLong(args[i]);
+      }
+    }
+
+    AISettings settings = new AISettings();
+    try {
+      settings = AISettings.load("data");
+    } catch (IOException e) {
+      System.out.println("Could not load data/config.ini, using the default AI settings");
+    }
+    settings.setPlanAsync(false);
+    AI ai = settings.create();
+
+    //The first games run while the JIT compiles the AI
+    ai.setTimeBudget(budgets[0]);
+    play(ai, GAMES / 2, new long[GAMES * PIECES * 2]);
+
+    int failed = 0;
+    for (long budget : budgets) {
+      ai.setTimeBudget(budget);
+      long[] times = new long[GAMES * PIECES * 2];
+      int count = play(ai, GAMES, times);
+
+      Arrays.sort(times, 0, count);
+      long p99 = times[(int) Math.ceil(count * 0.99) - 1];
+      boolean passed = p99 <= budget;
+      System.out.println(String.format("%.1f", budget / 1e6) + "ms: " + count + " decisions, p50 " + String.format("%.2f", times[(count - 1) / 2] / 1e6) +
+        "ms, p99 " + String.format("%.2f", p99 / 1e6) + "ms" + (passed ? "" : ", over budget"));
+      if (!passed)
+        failed++;
+    }
+
+    System.out.println(failed == 0 ? "Passed" : "Failed " + failed + " of " + budgets.length + " budgets");
+    if (failed > 0)
+      System.exit(1);
+  }
+
+  //Plays games with the AI like Simulator does, and writes the time of every decision to times. Returns how many there were.
+  private static int play(AI ai, int games, long[] times) {
+    int count = 0;
+    for (int g = 0; g < games; g++) {
+      GameEngine engine = new GameEngine(g * 5 % (GameEngine.MAX_LEVEL + 1), Randomizer.create(Randomizer.UNIFORM, g));
+      int piece = -1;
+      while (!engine.isGameOver() && engine.getPiecesSpawned() < PIECES) {
+        if (engine.getPiecesSpawned() != piece || !engine.hasAIPath()) {
+          piece = engine.getPiecesSpawned();
+          long start = now();
+          ai.generateInputQueue(engine);
+          if (count < times.length)
+            times[count++] = now() - start;
+        }
+        engine.moveToAITarget();
+        engine.update();
+      }
+    }
+    return count;
+  }
+
+  private static long now() {
+    return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+  }
+}
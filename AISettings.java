@@ -0,0 +1,112 @@
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * The AI settings in config.ini ([AI], [AIWeights] and [AIBudget]), read in one place so the
+ * sketch and the headless tools build the same AI. Files named in config.ini are in the same
+ * data folder.
+ */
+public class AISettings {
+
+  private int threads;
+  private boolean planAsync;
+  private int lookaheadWidth;
+  private int expectimaxDepth;
+  private long timeBudget;
+  private Evaluator evaluator;
+  private int placementCacheSize;
+  private String placementCacheFile;
+
+  //The settings used when config.ini can not be read
+  public AISettings() {
+    this.threads = 1;
+    this.planAsync = false;
+    this.lookaheadWidth = 0;
+    this.expectimaxDepth = 0;
+    this.timeBudget = 0;
+    this.evaluator = new LinearEvaluator();
+    this.placementCacheSize = 0;
+    this.placementCacheFile = "placements.bin";
+  }
+
+  public static AISettings load(String dataFolder) throws IOException {
+    IniFile config = new IniFile(new File(dataFolder, "config.ini").getPath());
+    AISettings settings = new AISettings();
+
+    if ("true".equals(config.getString("AI", "parallel", "false"))) {
+      settings.threads = config.getInt("AI", "threads", 0);
+      if (settings.threads <= 0)
+        settings.threads = Runtime.getRuntime().availableProcessors();
+    }
+    settings.planAsync = "true".equals(config.getString("AI", "planAsync", "false"));
+    settings.lookaheadWidth = config.getInt("AI", "lookaheadWidth", 0);
+    settings.expectimaxDepth = config.getInt("AI", "expectimaxDepth", 0);
+    settings.placementCacheSize = config.getInt("AI", "placementCacheSize", 0);
+    settings.placementCacheFile = config.getString("AI", "placementCacheFile", settings.placementCacheFile);
+
+    //The AI only plays attract mode so far
+    int difficulty = SearchBudgets.getDifficulty(config.getString("AIBudget", "difficulty", "normal"));
+    settings.timeBudget = SearchBudgets.load(config, "AIBudget").get(difficulty, false);
+
+    settings.evaluator = LinearEvaluator.load(config, "AIWeights");
+    if ("network".equals(config.getString("AI", "evaluator", "linear"))) {
+      NetworkEvaluator network = NetworkEvaluator.load(new File(dataFolder, config.getString("AI", "networkFile", "network.bin")).getPath());
+      if (network != null)
+        settings.evaluator = network;
+    }
+    return settings;
+  }
+
+  //Makes an AI with these settings, without a placement cache
+  public AI create() {
+    AI ai = new AI(threads, planAsync);
+    ai.setLookaheadWidth(lookaheadWidth);
+    ai.setExpectimaxDepth(expectimaxDepth);
+    ai.setTimeBudget(timeBudget);
+    ai.setEvaluator(evaluator);
+    return ai;
+  }
+
+  // Getters and setters
+  public int getThreads() {
+    return this.threads;
+  }
+
+  //Batch tools run one game per core and give each AI a single thread
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public boolean isPlanAsync() {
+    return this.planAsync;
+  }
+
+  //Headless tools plan on the game's thread, so every decision is made before the frame it is needed in
+  public void setPlanAsync(boolean planAsync) {
+    this.planAsync = planAsync;
+  }
+
+  public int getLookaheadWidth() {
+    return this.lookaheadWidth;
+  }
+
+  public int getExpectimaxDepth() {
+    return this.expectimaxDepth;
+  }
+
+  public long getTimeBudget() {
+    return this.timeBudget;
+  }
+
+  public Evaluator getEvaluator() {
+    return this.evaluator;
+  }
+
+  public int getPlacementCacheSize() {
+    return this.placementCacheSize;
+  }
+
+  public String getPlacementCacheFile() {
+    return this.placementCacheFile;
+  }
+}
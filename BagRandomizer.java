@@ -0,0 +1,71 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Deals the 7 types in a shuffled bag, then shuffles a new bag. Every type comes once in every 7
+ * pieces, so the longest drought is 12 pieces.
+ */
+public class BagRandomizer implements Randomizer {
+
+  private final SeededRandom random;
+  private final int[] bag;
+  private int index;
+
+  public BagRandomizer(long seed) {
+    this.random = new SeededRandom(seed);
+    this.bag = new int[PieceShape.TYPES];
+    for (int i = 0; i < this.bag.length; i++) {
+      this.bag[i] = i;
+    }
+    this.index = this.bag.length;
+  }
+
+  @Override
+  public int next() {
+    if (index == bag.length) {
+      //Fisher-Yates, in place
+      for (int i = bag.length - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int type = bag[i];
+        bag[i] = bag[j];
+        bag[j] = type;
+      }
+      index = 0;
+    }
+    return bag[index++];
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putLong(random.getState());
+    for (int i = 0; i < bag.length; i++) {
+      buffer.put((byte) bag[i]);
+    }
+    buffer.put((byte) index);
+  }
+
+  @Override
+  public boolean checkState(ByteBuffer buffer) {
+    if (buffer.remaining() < 8 + bag.length + 1)
+      return false;
+    buffer.getLong();
+    //The bag holds every type once
+    int types = 0;
+    for (int i = 0; i < bag.length; i++) {
+      int type = buffer.get();
+      if (type < 0 || type >= bag.length)
+        return false;
+      types |= 1 << type;
+    }
+    int index = buffer.get();
+    return types == (1 << bag.length) - 1 && index >= 0 && index <= bag.length;
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    random.setState(buffer.getLong());
+    for (int i = 0; i < bag.length; i++) {
+      bag[i] = buffer.get();
+    }
+    index = buffer.get();
+  }
+}
@@ -0,0 +1,301 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Plays thousands of seeded AI games on every core, as a regression suite for changes to the AI
+ * and the game rules.
+ *
+ * Every game is one task on a fixed size pool with one AI per pool thread, built from config.ini
+ * like GameManager builds it but planning on the game's thread. Games only meet in the totals,
+ * which are lock free: LongAdders for the sums and atomic arrays for the top out histogram and
+ * the decision time histogram.
+ *
+ * The results are written in the ini format. Given the results of an earlier run as a baseline,
+ * the runner fails (exit code 1) if the average pieces a game survived went down or the p99
+ * decision time went up by more than the tolerances. A game that throws is reported, left out of
+ * the averages and fails the run as well.
+ *
+ * Compile and run from the sketch folder (only the .java tabs are needed):
+ *   javac -d batch *.java
+ *   java -cp batch BatchRunner -games 2000 -out results.ini
+ *   java -cp batch BatchRunner -games 2000 -baseline results.ini
+ */
+public class BatchRunner {
+
+  //Settings, see parseArgs
+  private int games = 1000;
+  private long seed = 0;
+  private int startLevel = 10;
+  private boolean intense = false;
+  private String randomizer = Randomizer.UNIFORM;
+  private int maxPieces = 2000;  //The AI at the config.ini settings rarely tops out, so games are cut off
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private String data = "data";
+  private String out = "results.ini";
+  private String baseline = null;
+  private double survivalTolerance = 0.02;
+  private double timeTolerance = 0.2;
+
+  //Decision times go in buckets an eighth of a power of two wide (9%), from 1us up to about 4s
+  private static final int BUCKETS_PER_DOUBLING = 8;
+  private static final int TIME_BUCKETS = 22 * BUCKETS_PER_DOUBLING;
+
+  private AISettings settings;
+  private ThreadLocal<AI> ais;
+  private final List<AI> created = new CopyOnWriteArrayList<AI>();  //Every AI the pool threads made, for their table hit rates
+
+  //Totals of every game
+  private final LongAdder lines = new LongAdder();
+  private final LongAdder score = new LongAdder();
+  private final LongAdder pieces = new LongAdder();
+  private final LongAdder decisions = new LongAdder();
+  private final LongAdder decisionNanos = new LongAdder();
+  private final AtomicLongArray topOuts = new AtomicLongArray(GameEngine.MAX_LEVEL + 1);  //Games that topped out by level, the last one for that level and up
+  private final AtomicLongArray decisionTimes = new AtomicLongArray(TIME_BUCKETS);
+  private final LongAdder cutOff = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();  //Games that threw, left out of every total
+
+  public static void main(String[] args) {
+    BatchRunner runner = new BatchRunner();
+    if (!runner.parseArgs(args))
+      return;
+
+    runner.settings = new AISettings();
+    try {
+      runner.settings = AISettings.load(runner.data);
+    } catch (IOException e) {
+      System.out.println("Could not load " + runner.data + "/config.ini, using the default AI settings");
+    }
+    //The pool already keeps every core busy with games
+    runner.settings.setPlanAsync(false);
+    runner.settings.setThreads(1);
+    runner.ais = ThreadLocal.withInitial(runner::createAI);
+
+    try {
+      boolean passed = runner.run();
+      if (!passed)
+        System.exit(1);
+    } catch (IOException e) {
+      System.out.println("Could not write " + runner.out + ": " + e.getMessage());
+      System.exit(2);
+    } catch (InterruptedException e) {
+      System.out.println("Interrupted");
+      System.exit(2);
+    }
+  }
+
+  private boolean parseArgs(String[] args) {
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch(args[i]) {
+      case "-games":
+        games = Integer.parseInt(value);
+        break;
+      case "-seed":
+        seed = Long.parseLong(value);
+        break;
+      case "-level":
+        startLevel = Math.max(0, Math.min(Integer.parseInt(value), GameEngine.MAX_LEVEL));
+        break;
+      case "-intense":
+        intense = "true".equals(value);
+        break;
+      case "-randomizer":
+        randomizer = value;
+        break;
+      case "-maxPieces":
+        maxPieces = Integer.parseInt(value);
+        break;
+      case "-threads":
+        threads = Integer.parseInt(value);
+        break;
+      case "-data":
+        data = value;
+        break;
+      case "-out":
+        out = value;
+        break;
+      case "-baseline":
+        baseline = value;
+        break;
+      case "-survivalTolerance":
+        survivalTolerance = Double.parseDouble(value);
+        break;
+      case "-timeTolerance":
+        timeTolerance = Double.parseDouble(value);
+        break;
+      default:
+        System.out.println("Unknown option " + args[i]);
+        System.out.println("Options: -games -seed -level -intense -randomizer -maxPieces -threads -data -out -baseline -survivalTolerance -timeTolerance");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private AI createAI() {
+    AI ai = settings.create();
+    created.add(ai);
+    return ai;
+  }
+
+  //Plays every game and reports. Returns false if the results are worse than the baseline.
+  private boolean run() throws IOException, InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(threads, 1));
+    long start = System.nanoTime();
+    for (int g = 0; g < games; g++) {
+      long gameSeed = seed + g;
+      pool.execute(() -> {
+        try {
+          playGame(gameSeed);
+        } catch (RuntimeException e) {
+          failed.increment();
+          System.out.println("Game " + gameSeed + " failed: " + e);
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    //Averages are over the games that finished
+    long played = Math.max(completed.sum(), 1);
+    double averagePieces = (double) pieces.sum() / played;
+    double p99 = percentile(0.99);
+    System.out.println("Games: " + games + " on " + threads + " threads in " + String.format("%.1f", seconds) + "s (" + String.format("%.1f", games / seconds) + " games/s)" +
+      (failed.sum() > 0 ? ", " + failed.sum() + " failed" : ""));
+    System.out.println("Average lines: " + String.format("%.1f", (double) lines.sum() / played) + ", score: " + String.format("%.0f", (double) score.sum() / played) + ", pieces: " + String.format("%.1f", averagePieces));
+    System.out.println("AI decision: mean " + String.format("%.1f", decisionNanos.sum() / 1e3 / Math.max(decisions.sum(), 1)) + "us, p50 <= " + String.format("%.1f", percentile(0.5)) + "us, p99 <= " + String.format("%.1f", p99) + "us");
+    System.out.println("Transposition table: " + String.format("%.1f", tableHitRate() * 100) + "% hit rate");
+    System.out.println("Top outs by level (" + cutOff.sum() + " games cut off at " + maxPieces + " pieces):");
+    for (int level = 0; level < topOuts.length(); level++) {
+      if (topOuts.get(level) > 0)
+        System.out.println("  " + level + (level == topOuts.length() - 1 ? "+" : "") + ": " + topOuts.get(level));
+    }
+
+    //Compared before writing, the baseline may be the output file of the last run. A game that failed fails the run.
+    boolean passed = (baseline == null || compare(averagePieces, p99)) && failed.sum() == 0;
+    writeResults(averagePieces, p99);
+    return passed;
+  }
+
+  private void playGame(long gameSeed) {
+    AI ai = ais.get();
+    GameEngine engine = new GameEngine(startLevel, Randomizer.create(randomizer, gameSeed));
+    engine.setIntenseMode(intense);
+    engine.setListener(new GameListener() {
+      @Override
+      public void onPieceSpawned() {
+        decide(ai, engine);
+      }
+    });
+    decide(ai, engine);
+
+    while (!engine.isGameOver() && (maxPieces == 0 || engine.getPiecesSpawned() < maxPieces)) {
+      if (!engine.hasAIPath())
+        decide(ai, engine);
+      engine.moveToAITarget();
+      engine.update();
+    }
+
+    lines.add(engine.getTotalLinesCleared());
+    score.add(engine.getScore());
+    pieces.add(engine.getPiecesSpawned());
+    if (engine.isGameOver())
+      topOuts.incrementAndGet(Math.min(engine.getLevel(), topOuts.length() - 1));
+    else
+      cutOff.increment();
+    completed.increment();
+  }
+
+  private void decide(AI ai, GameEngine engine) {
+    long start = System.nanoTime();
+    ai.generateInputQueue(engine);
+    long time = System.nanoTime() - start;
+
+    decisions.increment();
+    decisionNanos.add(time);
+    decisionTimes.incrementAndGet(timeBucket(time));
+  }
+
+  //Mean of the hit rates of the pool threads' AIs, which played about as many games each
+  private double tableHitRate() {
+    double total = 0;
+    for (AI ai : created) {
+      total += ai.getTableHitRate();
+    }
+    return created.isEmpty() ? 0 : total / created.size();
+  }
+
+  private static int timeBucket(long nanos) {
+    double micros = Math.max(nanos / 1e3, 1);
+    return Math.min((int) (BUCKETS_PER_DOUBLING * Math.log(micros) / Math.log(2)), TIME_BUCKETS - 1);
+  }
+
+  //Upper end of the bucket holding the decision time at share p, in microseconds
+  private double percentile(double p) {
+    long total = decisions.sum();
+    long seen = 0;
+    for (int b = 0; b < TIME_BUCKETS; b++) {
+      seen += decisionTimes.get(b);
+      if (seen >= p * total)
+        return Math.pow(2, (b + 1) / (double) BUCKETS_PER_DOUBLING);
+    }
+    return Math.pow(2, TIME_BUCKETS / (double) BUCKETS_PER_DOUBLING);
+  }
+
+  private void writeResults(double averagePieces, double p99) throws IOException {
+    long played = Math.max(completed.sum(), 1);
+    PrintWriter writer = new PrintWriter(new FileWriter(out));
+    try {
+      writer.println("[Results]");
+      writer.println("games = " + games);
+      writer.println("seed = " + seed);
+      writer.println("level = " + startLevel);
+      writer.println("randomizer = " + randomizer);
+      writer.println("maxPieces = " + maxPieces);
+      writer.println("failedGames = " + failed.sum());
+      writer.println("averageLines = " + (double) lines.sum() / played);
+      writer.println("averageScore = " + (double) score.sum() / played);
+      writer.println("averagePieces = " + averagePieces);
+      writer.println("topOuts = " + (completed.sum() - cutOff.sum()));
+      writer.println("p50DecisionMicros = " + percentile(0.5));
+      writer.println("p99DecisionMicros = " + p99);
+    } finally {
+      writer.close();
+    }
+    System.out.println("Results written to " + out);
+  }
+
+  //Returns false if survival or decision time regressed against the baseline file
+  private boolean compare(double averagePieces, double p99) throws IOException {
+    if (!new File(baseline).exists()) {
+      System.out.println("No baseline at " + baseline);
+      return false;
+    }
+
+    IniFile results = new IniFile(baseline);
+    if (results.getInt("Results", "games", 0) != games || results.getLong("Results", "seed", 0) != seed ||
+      results.getInt("Results", "level", 0) != startLevel || !randomizer.equals(results.getString("Results", "randomizer", Randomizer.UNIFORM)) || results.getInt("Results", "maxPieces", 0) != maxPieces)
+      System.out.println("Warning: the baseline played different games");
+
+    double basePieces = results.getDouble("Results", "averagePieces", 0);
+    double baseP99 = results.getDouble("Results", "p99DecisionMicros", 0);
+    boolean survived = averagePieces >= basePieces * (1 - survivalTolerance);
+    boolean fastEnough = p99 <= baseP99 * (1 + timeTolerance);
+
+    System.out.println("Survival: " + String.format("%.1f", averagePieces) + " pieces against " + String.format("%.1f", basePieces) + (survived ? " ok" : " REGRESSED"));
+    System.out.println("p99 decision: " + String.format("%.1f", p99) + "us against " + String.format("%.1f", baseP99) + "us" + (fastEnough ? " ok" : " REGRESSED"));
+    return survived && fastEnough;
+  }
+}
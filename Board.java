@@ -0,0 +1,183 @@
+import java.nio.ByteBuffer;
+
+/*
+ * The grid of locked blocks, stored as one bitmask per row.
+ * Bit x of rows[y] is set when column x of row y is filled. Rows above the top of the grid
+ * (negative y) count as empty. This class has no rendering dependencies.
+ * A Zobrist hash of the filled cells is kept up to date as cells are set and lines cleared.
+ */
+public class Board {
+
+  private final int w;
+  private final int h;
+  private final int fullRow;
+
+  private final int[] rows;
+  private long hash;
+
+  public Board(int w, int h) {
+    this.w = w;
+    this.h = h;
+    this.fullRow = (1 << w) - 1;
+    this.rows = new int[h];
+    this.hash = 0;
+  }
+
+  public void copyFrom(Board other) {
+    System.arraycopy(other.rows, 0, this.rows, 0, this.h);
+    this.hash = other.hash;
+  }
+
+  public void clear() {
+    for (int y = 0; y < this.h; y++) {
+      this.rows[y] = 0;
+    }
+    this.hash = 0;
+  }
+
+  public boolean isFilled(int x, int y) {
+    return y >= 0 && (this.rows[y] & (1 << x)) != 0;
+  }
+
+  //Tests a piece shape at a grid position against the walls, the floor and the filled cells
+  public boolean collides(int type, int orientation, int x, int y) {
+    int left = x + PieceShape.minX(type, orientation);
+    if (left < 0 || x + PieceShape.maxX(type, orientation) >= this.w || y + PieceShape.maxY(type, orientation) >= this.h)
+      return true;
+
+    int top = y + PieceShape.minY(type, orientation);
+    int height = PieceShape.maxY(type, orientation) - PieceShape.minY(type, orientation);
+    for (int r = 0; r <= height; r++) {
+      int row = top + r;
+      if (row >= 0 && (this.rows[row] & (PieceShape.rowMask(type, orientation, r) << left)) != 0)
+        return true;
+    }
+    return false;
+  }
+
+  //Fills the cells of a piece. Returns false if part of the piece is above the top of the grid.
+  public boolean place(int type, int orientation, int x, int y) {
+    boolean fits = true;
+    for (int i = 0; i < PieceShape.BLOCKS; i++) {
+      int cellY = y + PieceShape.dy(type, orientation, i);
+      if (cellY >= 0) {
+        int cellX = x + PieceShape.dx(type, orientation, i);
+        this.rows[cellY] |= 1 << cellX;
+        this.hash ^= Zobrist.cell(cellX, cellY);
+      } else {
+        fits = false;
+      }
+    }
+    return fits;
+  }
+
+  //The hash this board would have after place(type, orientation, x, y), without changing the board
+  public long hashWith(int type, int orientation, int x, int y) {
+    long hash = this.hash;
+    for (int i = 0; i < PieceShape.BLOCKS; i++) {
+      int cellY = y + PieceShape.dy(type, orientation, i);
+      if (cellY >= 0)
+        hash ^= Zobrist.cell(x + PieceShape.dx(type, orientation, i), cellY);
+    }
+    return hash;
+  }
+
+  //Returns a mask with bit y set for every full row
+  public int getFullLines() {
+    int lines = 0;
+    for (int y = 0; y < this.h; y++) {
+      if (this.rows[y] == this.fullRow)
+        lines |= 1 << y;
+    }
+    return lines;
+  }
+
+  //Removes the rows in the mask and shifts everything above them down. Returns the number of rows removed.
+  public int clearLines(int lines) {
+    if (lines == 0)
+      return 0;
+
+    //Only the cleared rows and the rows above them change, so only they are rehashed
+    int lowest = 31 - Integer.numberOfLeadingZeros(lines);
+    for (int y = 0; y <= lowest; y++) {
+      this.hash ^= Zobrist.row(y, this.rows[y]);
+    }
+
+    int count = 0;
+    for (int y = 0; y <= lowest; y++) {
+      if ((lines & (1 << y)) != 0) {
+        System.arraycopy(this.rows, 0, this.rows, 1, y);
+        this.rows[0] = 0;
+        count++;
+      }
+    }
+
+    for (int y = 0; y <= lowest; y++) {
+      this.hash ^= Zobrist.row(y, this.rows[y]);
+    }
+    return count;
+  }
+
+  //Saves and restores the rows and their hash. Rows are written as 16 bits, boards here are 10 wide.
+  public void writeState(ByteBuffer buffer) {
+    for (int y = 0; y < this.h; y++) {
+      buffer.putShort((short) this.rows[y]);
+    }
+    buffer.putLong(this.hash);
+  }
+
+  //Returns true if readState could restore the state at the buffer's position, reading past it
+  public boolean checkState(ByteBuffer buffer) {
+    if (buffer.remaining() < this.h * 2 + 8)
+      return false;
+    for (int y = 0; y < this.h; y++) {
+      if ((buffer.getShort() & 0xFFFF & ~this.fullRow) != 0)
+        return false;
+    }
+    buffer.getLong();
+    return true;
+  }
+
+  public void readState(ByteBuffer buffer) {
+    for (int y = 0; y < this.h; y++) {
+      this.rows[y] = buffer.getShort() & 0xFFFF;
+    }
+    this.hash = buffer.getLong();
+  }
+
+  public int getTopLine() {
+    for (int y = 0; y < this.h; y++) {
+      if (this.rows[y] != 0)
+        return y;
+    }
+
+    return this.h-1;
+  }
+
+  //Zobrist hash of the filled cells
+  public long hash() {
+    return this.hash;
+  }
+
+  // Getters and setters
+  public int getWidth() {
+    return this.w;
+  }
+
+  public int getHeight() {
+    return this.h;
+  }
+
+  public int getFullRow() {
+    return this.fullRow;
+  }
+
+  public int getRow(int y) {
+    return this.rows[y];
+  }
+
+  public void setRow(int y, int row) {
+    this.hash ^= Zobrist.row(y, this.rows[y]) ^ Zobrist.row(y, row);
+    this.rows[y] = row;
+  }
+}
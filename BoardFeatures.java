@@ -0,0 +1,156 @@
+/*
+ * The features the AI scores a board with, computed in a single pass over the rows.
+ *
+ * Going from the top row down, a mask of the columns that already had a block above is kept,
+ * so the top of each column, the holes under it, the wells and the transitions all come out of
+ * bit operations on one row at a time. The values are written into arrays owned by this object,
+ * so computing the features of a board does not allocate.
+ */
+public class BoardFeatures {
+
+  //Feature indices
+  public static final int HEIGHT = 0;
+  public static final int LINES = 1;
+  public static final int HOLES = 2;
+  public static final int ROUGHNESS = 3;
+  public static final int WELLS = 4;
+  public static final int ROW_TRANSITIONS = 5;
+  public static final int COLUMN_TRANSITIONS = 6;
+  public static final int LANDING_HEIGHT = 7;
+  public static final int ERODED_CELLS = 8;
+  public static final int COUNT = 9;
+
+  //Names used for the weights in config.ini
+  public static final String[] NAMES = {"height", "lines", "holes", "roughness", "wells",
+    "rowTransitions", "columnTransitions", "landingHeight", "erodedCells"};
+
+  private final double[] values;
+  private final int[] columnHeights;
+  private final int[] wellDepths;
+
+  public BoardFeatures() {
+    this.values = new double[COUNT];
+    this.columnHeights = new int[GameEngine.WIDTH];
+    this.wellDepths = new int[GameEngine.WIDTH];
+  }
+
+  //board is the board right after a piece locked on row y, before its full rows are cleared
+  public void compute(Board board, int type, int orientation, int y) {
+    compute(board);
+
+    //Landing height is the height of the middle of the piece
+    int h = board.getHeight();
+    int top = y + PieceShape.minY(type, orientation);
+    int bottom = y + PieceShape.maxY(type, orientation);
+    values[LANDING_HEIGHT] = h - (top + bottom + 1) / 2.0;
+
+    //Eroded cells are the rows the piece cleared times the cells of the piece in those rows
+    int fullLines = board.getFullLines();
+    int pieceCells = 0;
+    for (int i = 0; i < PieceShape.BLOCKS; i++) {
+      int cellY = y + PieceShape.dy(type, orientation, i);
+      if (cellY >= 0 && (fullLines & (1 << cellY)) != 0)
+        pieceCells++;
+    }
+    values[ERODED_CELLS] = Integer.bitCount(fullLines) * pieceCells;
+  }
+
+  //Computes every feature that only depends on the board. Landing height and eroded cells are left at 0.
+  public void compute(Board board) {
+    int w = board.getWidth();
+    int h = board.getHeight();
+    int fullRow = board.getFullRow();
+    int leftWall = 1;
+    int rightWall = 1 << (w - 1);
+
+    for (int x = 0; x < w; x++) {
+      columnHeights[x] = 0;
+      wellDepths[x] = 0;
+    }
+
+    int covered = 0;  //Columns with a block in a row above
+    int lines = 0;
+    int holes = 0;
+    int height = 0;
+    int wells = 0;
+    int rowTransitions = 0;
+    int columnTransitions = 0;
+    int above = 0;  //The row above, empty above the top of the grid
+
+    for (int y = 0; y < h; y++) {
+      int row = board.getRow(y);
+
+      //Columns whose highest block is in this row
+      int tops = row & ~covered;
+      while (tops != 0) {
+        int x = Integer.numberOfTrailingZeros(tops);
+        columnHeights[x] = h - y;
+        height += h - y;
+        tops &= tops - 1;
+      }
+
+      holes += Integer.bitCount(~row & covered & fullRow);
+      if (row == fullRow)
+        lines++;
+
+      //Open cells with a block or a wall on both sides. Each cell adds its depth in the well.
+      int wellCells = ~row & ~covered & fullRow & ((row << 1) | leftWall) & ((row >> 1) | rightWall);
+      for (int x = 0; x < w; x++) {
+        if ((wellCells & (1 << x)) != 0) {
+          wellDepths[x]++;
+          wells += wellDepths[x];
+        } else {
+          wellDepths[x] = 0;
+        }
+      }
+
+      //Changes between empty and filled along the row, the walls count as filled
+      int padded = (row << 1) | 1 | (1 << (w + 1));
+      rowTransitions += Integer.bitCount((padded ^ (padded >> 1)) & ((1 << (w + 1)) - 1));
+
+      //Changes between empty and filled from the row above
+      columnTransitions += Integer.bitCount(row ^ above);
+      above = row;
+
+      covered |= row;
+    }
+
+    //The floor counts as filled
+    columnTransitions += Integer.bitCount(~above & fullRow);
+
+    int roughness = 0;
+    for (int x = 0; x < w - 1; x++) {
+      roughness += Math.abs(columnHeights[x] - columnHeights[x + 1]);
+    }
+
+    values[HEIGHT] = height;
+    values[LINES] = lines;
+    values[HOLES] = holes;
+    values[ROUGHNESS] = roughness;
+    values[WELLS] = wells;
+    values[ROW_TRANSITIONS] = rowTransitions;
+    values[COLUMN_TRANSITIONS] = columnTransitions;
+    values[LANDING_HEIGHT] = 0;
+    values[ERODED_CELLS] = 0;
+  }
+
+  // Getters and setters
+  public double get(int feature) {
+    return this.values[feature];
+  }
+
+  public void add(int feature, double value) {
+    this.values[feature] += value;
+  }
+
+  //Writes the features to a batch for an Evaluator
+  public void copyTo(float[] batch, int offset) {
+    for (int i = 0; i < COUNT; i++) {
+      batch[offset + i] = (float) this.values[i];
+    }
+  }
+
+  public int getColumnHeight(int x) {
+    return this.columnHeights[x];
+  }
+}
@@ -0,0 +1,13 @@
+/*
+ * Scores boards for the AI, higher is better.
+ *
+ * The AI computes the features of every board it tries and hands them to its evaluator, so a
+ * different way of scoring (other weights, a network) only needs a new implementation of this.
+ * Boards are scored in batches, every placement of a piece in one call.
+ * One evaluator is shared by every search worker, so evaluate must be safe to call from several threads.
+ */
+public interface Evaluator {
+
+  //Scores count boards. The features of board i start at features[i * BoardFeatures.COUNT] and its score goes to scores[offset + i].
+  void evaluate(float[] features, int count, double[] scores, int offset);
+}
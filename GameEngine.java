@@ -0,0 +1,598 @@
+import java.nio.ByteBuffer;
+
+/*
+ * The rules of the game: spawning, gravity, collisions, line clears, scoring and leveling.
+ *
+ * This class is plain Java with no rendering or audio dependencies, so it can run without a
+ * PApplet (for example to simulate games headless). The sketch drives it by calling update()
+ * once per frame and adapts it for display through a GameListener.
+ */
+public class GameEngine {
+
+  /*
+  *Constants
+   */
+
+  //General settings
+  public static final int WIDTH = 10;
+  public static final int HEIGHT = 24;
+  public static final int MAX_LEVEL = 16;
+
+  public static final int PIECE_SPAWN_X = 5;
+  public static final int PIECE_SPAWN_Y = 0;
+  public static final int PREVIEW_SIZE = 5;  //Pieces after the current one that can be looked at
+  private final int linesToLevelUp = 5;
+  private final float levelFactor = 0.8f;
+  private final int pieceSpawnDelay = 10;
+
+  //level speeds
+  private static final int[] levelSpeeds =        {45, 40, 35, 30, 26, 22, 18, 14, 11, 8, 6, 5, 4, 3, 2, 1, 0};
+  private static final int[] levelIntenseSpeeds = {35, 30, 25, 22, 18, 15, 13, 11, 8, 6, 5, 4, 3, 2, 1, 0, 0};
+
+
+  /*
+  *Fields
+   */
+
+  private final Board board;
+  private final PieceQueue queue;  //Pieces after the current one, the first is the next piece
+  private GameListener listener;
+
+  //Current piece
+  private PieceType pieceType;
+  private int pieceOrientation;
+  private int pieceX;
+  private int pieceY;
+  private boolean pieceLocked;
+
+  private int nextPieceTimer;
+  private int piecesSpawned;  //Counts the pieces that became the current piece, so plans can tell pieces apart
+  private final InputType[] aiMoves;  //Planned moves for the AI, see MoveGenerator.getPath
+  private final int[] aiMoveRows;
+  private int aiMoveCount;
+  private int aiMoveIndex;
+  private int aiPathPiece;  //Spawn number of the piece the path was planned for
+  private final int[] aiFrameInputs;  //Planned trigger masks, one per frame, see InputPlanner
+  private final int[] aiFrameStates;  //Where the piece should be at the start of every frame
+  private int aiFrameCount;
+  private int aiFrameIndex;
+  private int aiPathLostPiece;  //Spawn number of a piece that left its planned inputs
+
+  private int topLine;
+  private int totalLinesCleared;
+  private int linesToClear;  //Bit y is set for every full row waiting to be cleared
+  private int drought;
+  private int lastDrought;
+
+  private int fallRate;
+  private int fallTimer;
+
+  private int level;
+  private int score;
+  private boolean intenseMode;
+  private boolean gameOver;
+
+  public GameEngine(int startLevel, Randomizer randomizer) {
+    this.board = new Board(WIDTH, HEIGHT);
+    this.queue = new PieceQueue(randomizer, PREVIEW_SIZE);
+    this.listener = new GameListener() {
+    };
+
+    this.pieceType = PieceType.get(queue.take());
+    this.pieceOrientation = 0;
+    this.pieceX = PIECE_SPAWN_X;
+    this.pieceY = PIECE_SPAWN_Y;
+    this.pieceLocked = false;
+
+    this.nextPieceTimer = 0;
+    this.piecesSpawned = 0;
+    this.aiMoves = new InputType[MoveGenerator.MAX_STATES];
+    this.aiMoveRows = new int[MoveGenerator.MAX_STATES];
+    this.aiMoveCount = 0;
+    this.aiMoveIndex = 0;
+    this.aiPathPiece = -1;
+    this.aiFrameInputs = new int[InputPlanner.MAX_FRAMES];
+    this.aiFrameStates = new int[InputPlanner.MAX_FRAMES];
+    this.aiFrameCount = 0;
+    this.aiFrameIndex = 0;
+    this.aiPathLostPiece = -1;
+
+    this.topLine = HEIGHT-1;
+    this.totalLinesCleared = 0;
+    this.linesToClear = 0;
+    this.drought = 0;
+    this.lastDrought = 0;
+
+    this.level = startLevel;
+    this.score = 0;
+    this.intenseMode = false;
+    this.gameOver = false;
+
+    this.fallRate = levelSpeeds[startLevel];
+    this.fallTimer = fallRate;
+  }
+
+  //Runs one frame of the game
+  public void update() {
+    if (gameOver)
+      return;
+
+    //move piece
+    if (!pieceLocked) {
+      if (fallTimer > 0) {
+        fallTimer--;
+      } else {
+        //Reset first, so a listener of the lock sees the timer the next piece starts with
+        fallTimer = fallRate;
+        moveCurrentPiece(Direction.DOWN, true);
+      }
+    } else if (nextPieceTimer > 0) {
+      //Waiting for next piece to spawn
+      nextPieceTimer--;
+    } else {
+      if (linesToClear != 0) {
+        clearLines();
+      }
+      pushPiece();
+    }
+  }
+
+  /*
+   * Presses the AI's buttons for this frame. Call it before update(), where a player's inputs are handled.
+   * With planned frame inputs, plays the next frame of them. If the piece is not where they expect,
+   * the path is dropped so the AI plans again. Without them, makes one move of the planned path
+   * per call and soft drops once the path is done. Does nothing until a path was planned for the current piece.
+   */
+  public void moveToAITarget() {
+    if (!hasAIPath()) {
+      return;
+    } else if (aiFrameCount > 0) {
+      if (aiFrameIndex == aiFrameCount) {
+        moveCurrentPiece(Direction.DOWN, true);
+      } else if (InputPlanner.encodeState(pieceOrientation, pieceX, pieceY) != aiFrameStates[aiFrameIndex]) {
+        aiPathPiece = -1;
+        aiPathLostPiece = piecesSpawned;
+      } else {
+        applyInputs(aiFrameInputs[aiFrameIndex++]);
+      }
+    } else if (aiMoveIndex < aiMoveCount) {
+      if (pieceY < aiMoveRows[aiMoveIndex]) {
+        //Soft drop until the row of the next move
+        moveCurrentPiece(Direction.DOWN, true);
+        return;
+      }
+
+      switch(aiMoves[aiMoveIndex++]) {
+      case LEFT:
+        moveCurrentPiece(Direction.LEFT, true);
+        break;
+      case RIGHT:
+        moveCurrentPiece(Direction.RIGHT, true);
+        break;
+      case A:
+        rotateCurrentPiece(false, false);
+        break;
+      case B:
+        rotateCurrentPiece(true, false);
+        break;
+      default:
+        moveCurrentPiece(Direction.DOWN, true);
+        break;
+      }
+    } else {
+      moveCurrentPiece(Direction.DOWN, true);
+    }
+  }
+
+  //Runs one frame of triggered buttons the way GameManager.executeFunction does in game. Bit i is InputType index i.
+  public void applyInputs(int triggers) {
+    //Left cancels right
+    if ((triggers & (1 << InputType.LEFT.getIndex())) != 0)
+      moveCurrentPiece(Direction.LEFT, true);
+    else if ((triggers & (1 << InputType.RIGHT.getIndex())) != 0)
+      moveCurrentPiece(Direction.RIGHT, true);
+
+    if ((triggers & (1 << InputType.DOWN.getIndex())) != 0)
+      moveCurrentPiece(Direction.DOWN, true);
+    if ((triggers & (1 << InputType.A.getIndex())) != 0)
+      rotateCurrentPiece(false, false);
+    if ((triggers & (1 << InputType.B.getIndex())) != 0)
+      rotateCurrentPiece(true, false);
+  }
+
+  //Piece functionality methods
+
+  private void pushPiece() {
+
+    this.pieceType = PieceType.get(queue.take());
+    this.pieceOrientation = 0;
+    this.pieceX = PIECE_SPAWN_X;
+    this.pieceY = PIECE_SPAWN_Y;
+    this.pieceLocked = false;
+
+    //Checking if the player lost
+    if (board.collides(pieceType.getIndex(), pieceOrientation, pieceX, pieceY)) {
+      gameOver = true;
+      listener.onTopOut();
+      return;
+    }
+
+    this.piecesSpawned++;
+
+    //Handle Droughts
+    if (this.pieceType == PieceType.I) {
+      this.lastDrought = this.drought;
+      this.drought = 0;
+    } else {
+      this.drought++;
+    }
+
+    listener.onPieceSpawned();
+  }
+
+  // Returns true if piece has collided
+  public boolean moveCurrentPiece(Direction dir, boolean handleCollisions) {
+    switch(dir) {
+    case DOWN:
+      if (!checkCollisions(dir, handleCollisions)) {
+        pieceY++;
+        return false;
+      }
+      return true;
+    case LEFT:
+      if (!checkCollisions(dir, handleCollisions)) {
+        pieceX--;
+        return false;
+      } else {
+        listener.onMoveBlocked(dir);
+        return true;
+      }
+    case RIGHT:
+      if (!checkCollisions(dir, handleCollisions)) {
+        pieceX++;
+        return false;
+      } else {
+        listener.onMoveBlocked(dir);
+        return true;
+      }
+    default:
+      break;
+    }
+    return false;
+  }
+
+  public void rotateCurrentPiece(boolean cw, boolean dontCheck) {
+    int orientation = PieceShape.nextOrientation(pieceType.getIndex(), pieceOrientation, cw);
+
+    if (orientation != pieceOrientation && (dontCheck || !board.collides(pieceType.getIndex(), orientation, pieceX, pieceY)))
+      pieceOrientation = orientation;
+  }
+
+
+  //Calculation methods
+
+  private boolean checkCollisions(Direction dir, boolean handleCollisions) {
+    if (pieceLocked)
+      return true;
+
+    int dx = 0;
+    int dy = 0;
+
+    //Offset of the piece after moving by 1 unit
+    switch(dir) {
+    case DOWN:
+      dy = 1;
+      break;
+    case LEFT:
+      dx = -1;
+      break;
+    case RIGHT:
+      dx = 1;
+      break;
+    default:
+      break;
+    }
+
+    if (board.collides(pieceType.getIndex(), pieceOrientation, pieceX + dx, pieceY + dy)) {
+      if (dir == Direction.DOWN && handleCollisions)
+        handleCollision();
+      return true;
+    }
+
+    return false;
+  }
+
+  public boolean checkRotationCollision(boolean cw) {
+    return board.collides(pieceType.getIndex(), PieceShape.rotate(pieceOrientation, cw), pieceX, pieceY);
+  }
+
+  private void handleCollision() {
+    pieceLocked = true;
+
+    if (!board.place(pieceType.getIndex(), pieceOrientation, pieceX, pieceY)) {
+      //Locked above the top of the grid
+      gameOver = true;
+      listener.onTopOut();
+      return;
+    }
+
+    linesToClear = board.getFullLines();
+    topLine = board.getTopLine();
+    nextPieceTimer = pieceSpawnDelay;
+
+    listener.onPieceLocked(linesToClear);
+  }
+
+  private void clearLines() {
+    int lines = linesToClear;
+    int count = board.clearLines(lines);
+    linesToClear = 0;
+    totalLinesCleared += count;
+
+    // Add to score
+    float factor = 1 + levelFactor * level;
+    if (count == 4) {
+      score = Math.round(score + (1000 * factor));
+    } else if (count == 3) {
+      score = Math.round(score + (600 * factor));
+    } else if (count == 2) {
+      score = Math.round(score + (300 * factor));
+    } else {
+      score = Math.round(score + (100 * factor));
+    }
+
+    listener.onLinesCleared(lines, count);
+
+    //Add to level
+    if ((totalLinesCleared >= linesToLevelUp * (level+1)) && level != MAX_LEVEL) {
+      levelUp();
+    }
+  }
+
+  private void levelUp() {
+    level++;
+
+    //change fall rate
+    fallRate = getLevelSpeed(level, intenseMode);
+
+    listener.onLevelUp();
+  }
+
+  /*
+   * Saves everything the game depends on: the board, the pieces (the current one, the ones drawn
+   * ahead and the randomizer), the timers, score, level, lines and droughts. Writes the same number
+   * of bytes every time for a randomizer type and does not allocate.
+   */
+  public void writeState(ByteBuffer buffer) {
+    board.writeState(buffer);
+    queue.writeState(buffer);
+
+    buffer.put((byte) pieceType.getIndex());
+    buffer.put((byte) pieceOrientation);
+    buffer.put((byte) pieceX);
+    buffer.put((byte) pieceY);
+    buffer.put((byte) ((pieceLocked ? 1 : 0) | (intenseMode ? 2 : 0) | (gameOver ? 4 : 0)));
+    buffer.put((byte) nextPieceTimer);
+    buffer.putInt(piecesSpawned);
+
+    buffer.put((byte) topLine);
+    buffer.putInt(totalLinesCleared);
+    buffer.putInt(linesToClear);
+    buffer.putInt(drought);
+    buffer.putInt(lastDrought);
+
+    buffer.put((byte) fallRate);
+    buffer.put((byte) fallTimer);
+    buffer.put((byte) level);
+    buffer.putInt(score);
+  }
+
+  /*
+   * Returns true if readState could restore the state at the buffer's position: it is long enough
+   * for this game's randomizer type and every value is in range. Reads past the state.
+   */
+  public boolean checkState(ByteBuffer buffer) {
+    if (!board.checkState(buffer) || !queue.checkState(buffer) || buffer.remaining() < 34)
+      return false;
+
+    int type = buffer.get();
+    int orientation = buffer.get();
+    int x = buffer.get();
+    int y = buffer.get();
+    int flags = buffer.get();
+    int nextPieceTimer = buffer.get();
+    int piecesSpawned = buffer.getInt();
+    int topLine = buffer.get();
+    int totalLinesCleared = buffer.getInt();
+    int linesToClear = buffer.getInt();
+    int drought = buffer.getInt();
+    int lastDrought = buffer.getInt();
+    int fallRate = buffer.get();
+    int fallTimer = buffer.get();
+    int level = buffer.get();
+    int score = buffer.getInt();
+
+    return type >= 0 && type < PieceShape.TYPES && orientation >= 0 && orientation < PieceShape.ORIENTATIONS &&
+      x >= -2 && x < WIDTH + 2 && y >= -2 && y < HEIGHT && (flags & ~7) == 0 && nextPieceTimer >= 0 &&
+      piecesSpawned >= 0 && topLine >= 0 && topLine < HEIGHT && totalLinesCleared >= 0 && linesToClear >= 0 &&
+      linesToClear < (1 << HEIGHT) && drought >= 0 && lastDrought >= 0 && fallRate >= 0 && fallTimer >= 0 &&
+      level >= 0 && level <= MAX_LEVEL && score >= 0;
+  }
+
+  //Restores a state saved by writeState on a game with the same randomizer type. The AI plans again.
+  public void readState(ByteBuffer buffer) {
+    board.readState(buffer);
+    queue.readState(buffer);
+
+    pieceType = PieceType.get(buffer.get());
+    pieceOrientation = buffer.get();
+    pieceX = buffer.get();
+    pieceY = buffer.get();
+    int flags = buffer.get();
+    pieceLocked = (flags & 1) != 0;
+    intenseMode = (flags & 2) != 0;
+    gameOver = (flags & 4) != 0;
+    nextPieceTimer = buffer.get();
+    piecesSpawned = buffer.getInt();
+
+    topLine = buffer.get();
+    totalLinesCleared = buffer.getInt();
+    linesToClear = buffer.getInt();
+    drought = buffer.getInt();
+    lastDrought = buffer.getInt();
+
+    fallRate = buffer.get();
+    fallTimer = buffer.get();
+    level = buffer.get();
+    score = buffer.getInt();
+
+    aiMoveCount = 0;
+    aiFrameCount = 0;
+    aiPathPiece = -1;
+    aiPathLostPiece = -1;
+  }
+
+  public int getLevelSpeed(int level, boolean intense) {
+    if (intense)
+      return levelIntenseSpeeds[Math.min(level, levelIntenseSpeeds.length - 1)];
+    else
+      return levelSpeeds[Math.min(level, levelSpeeds.length - 1)];
+  }
+
+  // Getters and setters
+  public Board getBoard() {
+    return this.board;
+  }
+
+  public void setListener(GameListener listener) {
+    this.listener = listener;
+  }
+
+  public PieceType getPieceType() {
+    return this.pieceType;
+  }
+
+  public int getPieceOrientation() {
+    return this.pieceOrientation;
+  }
+
+  public int getPieceX() {
+    return this.pieceX;
+  }
+
+  public int getPieceY() {
+    return this.pieceY;
+  }
+
+  public boolean isPieceLocked() {
+    return this.pieceLocked;
+  }
+
+  public PieceType getNextType() {
+    return PieceType.get(queue.peek(0));
+  }
+
+  //Type of the piece i places after the current one, 0 is the next piece. i is less than PREVIEW_SIZE.
+  public PieceType getPreviewType(int i) {
+    return PieceType.get(queue.peek(i));
+  }
+
+  //Copies the path the AI planned for the current piece
+  public void setAIPath(InputType[] moves, int[] rows, int count) {
+    System.arraycopy(moves, 0, this.aiMoves, 0, count);
+    System.arraycopy(rows, 0, this.aiMoveRows, 0, count);
+    this.aiMoveCount = count;
+    this.aiMoveIndex = 0;
+    this.aiPathPiece = piecesSpawned;
+    this.aiFrameCount = 0;
+    this.aiFrameIndex = 0;
+    this.aiPathLostPiece = -1;
+  }
+
+  //Copies the frame inputs the AI planned for the path, call it after setAIPath
+  public void setAIFrames(int[] inputs, int[] states, int count) {
+    System.arraycopy(inputs, 0, this.aiFrameInputs, 0, count);
+    System.arraycopy(states, 0, this.aiFrameStates, 0, count);
+    this.aiFrameCount = count;
+    this.aiFrameIndex = 0;
+  }
+
+  public boolean hasAIPath() {
+    return this.aiPathPiece == this.piecesSpawned;
+  }
+
+  public boolean isAIPathLost() {
+    return this.aiPathLostPiece == this.piecesSpawned;
+  }
+
+  public int getPiecesSpawned() {
+    return this.piecesSpawned;
+  }
+
+  public int getTopLine() {
+    return this.topLine;
+  }
+
+  public int getTotalLinesCleared() {
+    return this.totalLinesCleared;
+  }
+
+  public int getLinesToClear() {
+    return this.linesToClear;
+  }
+
+  public int getDrought() {
+    return this.drought;
+  }
+
+  public int getLastDrought() {
+    return this.lastDrought;
+  }
+
+  public int getFallRate() {
+    return this.fallRate;
+  }
+
+  //The fall rate the next piece will have, after the rows waiting to be cleared level the game up
+  public int getNextFallRate() {
+    int lines = totalLinesCleared + Integer.bitCount(linesToClear);
+    if (lines >= linesToLevelUp * (level+1) && level != MAX_LEVEL)
+      return getLevelSpeed(level + 1, intenseMode);
+    return fallRate;
+  }
+
+  public void setFallRate(int fallRate) {
+    this.fallRate = fallRate;
+  }
+
+  public int getFallTimer() {
+    return this.fallTimer;
+  }
+
+  public void setFallTimer(int fallTimer) {
+    this.fallTimer = fallTimer;
+  }
+
+  public int getLevel() {
+    return this.level;
+  }
+
+  public int getScore() {
+    return this.score;
+  }
+
+  public boolean isIntenseMode() {
+    return this.intenseMode;
+  }
+
+  //Switching the mode switches the fall rate to the one of the level in the new mode, so a game started in intense mode falls at the intense speed from the first level
+  public void setIntenseMode(boolean intenseMode) {
+    if (intenseMode != this.intenseMode)
+      this.fallRate = getLevelSpeed(level, intenseMode);
+    this.intenseMode = intenseMode;
+  }
+
+  public boolean isGameOver() {
+    return this.gameOver;
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Receives the events of a GameEngine so the sketch can show effects and play sounds.
+ * Every method has an empty default so headless users only override what they need.
+ */
+public interface GameListener {
+
+  //A new piece became the current piece
+  default void onPieceSpawned() {
+  }
+
+  //The current piece locked into the board. lines has bit y set for every full row.
+  default void onPieceLocked(int lines) {
+  }
+
+  //Full rows were removed from the board
+  default void onLinesCleared(int lines, int count) {
+  }
+
+  default void onLevelUp() {
+  }
+
+  //A left or right move was blocked by a wall or a block
+  default void onMoveBlocked(Direction dir) {
+  }
+
+  //The board filled up and the game is over
+  default void onTopOut() {
+  }
+}
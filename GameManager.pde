@@ -1,5 +1,9 @@
 import ddf.minim.*;
 import ddf.minim.analysis.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.*;
 
 public class GameManager implements IDisplay {
 
@@ -33,6 +37,33 @@ public class GameManager implements IDisplay {
 
   AI ai;
 
+  //Pieces, see createRandomizer
+  private String randomizer;
+  private boolean fixedSeed;
+  private long seed;
+  private Random seeds;
+  private long gameSeed;
+  private String placementCacheFile;  //null when the AI has no placement cache
+
+  //Replays, see loadReplaySettings
+  private boolean recordReplays;
+  private String replayFolder;
+  private Replay pendingReplay;  //The game just started, recorded from its first frame a player plays
+  private ReplayRecorder recorder;
+  private int frameTriggers;
+  private Replay playback;  //The replay being played, null when the game is played
+  private int playbackFrame;
+  private int replayFrame;
+
+  //The player's game is saved every saveInterval frames to resume it after a power cut, see loadResumeSettings
+  private static final int SAVE_VERSION = 1;
+  private String resumeFile;  //null when games are not saved
+  private int saveInterval;
+  private int saveTimer;
+  private ByteBuffer saveBuffer;
+  private ExecutorService saver;  //Writes and deletes the save file and saves the placement cache in order, off the draw thread
+  private Future<?> saving;  //The last save written, the next one waits until it is done
+
   //Cheat Codes
   private boolean jeff;
   private boolean alwaysIntense;
@@ -66,11 +97,14 @@ public class GameManager implements IDisplay {
     this.displayedScores = this.getScoresNoDuplicates();
 
     this.inputManager = new InputManager();
+    loadPieceSettings();
+    loadReplaySettings();
+    loadResumeSettings();
     this.menuManager = new MenuManager(this);
     this.soundManager = new SoundManager(new Minim(application));
     this.gridManager = new GridManager(this);
 
-    this.ai = new AI(this);
+    this.ai = loadAI();
 
     //misc
     this.jeff = false;
@@ -86,6 +120,130 @@ public class GameManager implements IDisplay {
     }
   }
 
+  //Reads the [Pieces] section of config.ini. A seed other than "random" deals the same pieces every game.
+  private void loadPieceSettings() {
+    this.randomizer = Randomizer.UNIFORM;
+    this.fixedSeed = false;
+    this.seed = 0;
+    this.seeds = new Random();
+    try {
+      IniFile config = new IniFile(dataPath("config.ini"));
+      this.randomizer = config.getString("Pieces", "randomizer", Randomizer.UNIFORM);
+      String value = config.getString("Pieces", "seed", "random");
+      if (value != null && !value.equals("random")) {
+        this.fixedSeed = true;
+        this.seed = Long.parseLong(value);
+      }
+    } catch (IOException e) {
+      println("Could not load config.ini");
+    } catch (NumberFormatException e) {
+      println("The piece seed in config.ini is not a number");
+    }
+  }
+
+  //Reads the [Replay] section of config.ini. Players' games are recorded to the replay folder if
+  //record is true, and the replay named by play is played in real time in place of the first game.
+  private void loadReplaySettings() {
+    this.recordReplays = false;
+    this.replayFolder = dataPath("replays");
+    try {
+      IniFile config = new IniFile(dataPath("config.ini"));
+      this.recordReplays = "true".equals(config.getString("Replay", "record", "false"));
+      String folder = config.getString("Replay", "folder", "replays");
+      if (folder != null)
+        this.replayFolder = dataPath(folder);
+      String play = config.getString("Replay", "play", "");
+      if (play != null && !play.isEmpty()) {
+        this.playback = Replay.read(new File(dataPath(play)).toPath());
+        this.playbackFrame = 0;
+      }
+    } catch (IOException e) {
+      println("Could not load the replay settings: " + e.getMessage());
+    }
+  }
+
+  //Reads the [Resume] section of config.ini. A saveInterval of 0 does not save games.
+  private void loadResumeSettings() {
+    this.resumeFile = null;
+    this.saveInterval = 0;
+    this.saveBuffer = ByteBuffer.allocate(1024);
+    this.saver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Game saver");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.saving = null;
+    try {
+      IniFile config = new IniFile(dataPath("config.ini"));
+      this.saveInterval = config.getInt("Resume", "saveInterval", 0);
+      String file = config.getString("Resume", "file", "resume.bin");
+      if (this.saveInterval > 0 && file != null)
+        this.resumeFile = dataPath(file);
+    } catch (IOException e) {
+      println("Could not load the resume settings: " + e.getMessage());
+    }
+    this.saveTimer = this.saveInterval;
+  }
+
+  //The randomizer of a new game, with a new seed unless the seed is fixed
+  public Randomizer createRandomizer() {
+    if (this.playback != null) {
+      this.gameSeed = this.playback.getSeed();
+      return this.playback.createRandomizer();
+    }
+    this.gameSeed = this.fixedSeed ? this.seed : this.seeds.nextLong();
+    return Randomizer.create(this.randomizer, this.gameSeed);
+  }
+
+  //Creates the AI with the search settings from config.ini
+  private AI loadAI() {
+    AISettings settings = new AISettings();
+    try {
+      settings = AISettings.load(dataPath(""));
+    } catch (IOException e) {
+      println("Could not load config.ini");
+    }
+
+    AI ai = settings.create();
+    if (settings.getPlacementCacheSize() > 0) {
+      placementCacheFile = dataPath(settings.getPlacementCacheFile());
+      ai.setPlacementCache(loadPlacementCache(settings.getPlacementCacheSize()));
+    }
+    return ai;
+  }
+
+  //Loads the placements the AI chose in earlier runs, so attract mode does not start cold
+  private PlacementCache loadPlacementCache(int size) {
+    if (new File(placementCacheFile).exists()) {
+      try {
+        return PlacementCache.load(placementCacheFile, size);
+      } catch (IOException e) {
+        println("Could not load " + placementCacheFile);
+      }
+    }
+    return new PlacementCache(size);
+  }
+
+  //Saves the placement cache at the end of every AI game on the saver thread and reports how well it did
+  private void savePlacementCache() {
+    final PlacementCache cache = ai.getPlacementCache();
+    if (cache == null)
+      return;
+
+    saver.execute(new Runnable() {
+      public void run() {
+        try {
+          cache.save(placementCacheFile);
+        } catch (IOException e) {
+          println("Could not save " + placementCacheFile + ": " + e.getMessage());
+        }
+        println("AI placement cache: " + cache.getSize() + " placements, " + cache.getHits() + " hits, " + cache.getMisses() + " misses (" + nf((float) cache.getHitRate() * 100, 0, 1) + "% hit rate)");
+      }
+    });
+  }
+
   private void loadScores() {
     File temp = new File(dataPath("scores.csv"));
     //initializing the high score table
@@ -170,6 +328,12 @@ public class GameManager implements IDisplay {
       this.startLevel = startLevel;
       break;
     }
+
+    //A replay starts the way the recorded game started
+    if (this.playback != null) {
+      this.startLevel = this.playback.getStartLevel();
+      this.alwaysIntense = this.playback.isIntense();
+    }
     
     //Deleting names
     if(this.name.startsWith("DEL")) {
@@ -197,6 +361,67 @@ public class GameManager implements IDisplay {
     }
 
     this.oldName = this.name;
+
+    //Recorded once a player plays it, see recordFrame
+    if (this.recordReplays && this.playback == null)
+      this.pendingReplay = new Replay(this.gameSeed, this.randomizer, this.level, this.alwaysIntense, this.name);
+    else
+      this.pendingReplay = null;
+  }
+
+  //Adds this frame to the replay of the player's game. The AI's games are not recorded, the
+  //replay stops when the AI takes over.
+  private void recordFrame(boolean updated) {
+    if (inactiveTimer == 0) {
+      pendingReplay = null;
+      stopRecording();
+      return;
+    }
+    if (pendingReplay != null) {
+      startRecording(pendingReplay);
+      pendingReplay = null;
+    }
+    if (recorder == null)
+      return;
+
+    try {
+      recorder.frame(frameTriggers | (intenseMode ? Replay.INTENSE : 0) | (updated ? Replay.UPDATED : 0));
+    } catch (IOException e) {
+      println("Could not record the replay: " + e.getMessage());
+      stopRecording();
+    }
+  }
+
+  private void startRecording(Replay replay) {
+    new File(replayFolder).mkdirs();
+    String file = nf(year(), 4) + nf(month(), 2) + nf(day(), 2) + "-" + nf(hour(), 2) + nf(minute(), 2) + nf(second(), 2) + "-" + replay.getName() + ".rpl";
+    try {
+      recorder = new ReplayRecorder(new File(replayFolder, file).toPath(), replay);
+    } catch (IOException e) {
+      println("Could not record a replay to " + replayFolder + ": " + e.getMessage());
+    }
+  }
+
+  private void stopRecording() {
+    if (recorder == null)
+      return;
+
+    try {
+      recorder.close();
+    } catch (IOException e) {
+      println("Could not save the replay: " + e.getMessage());
+    }
+    recorder = null;
+  }
+
+  //Replaces the buttons of this frame with the replay's. UP is left out, the replay only shows the game.
+  private void playReplayFrame() {
+    if (playbackFrame == playback.getFrameCount()) {
+      reset();
+      return;
+    }
+    replayFrame = playback.getFrame(playbackFrame++);
+    inputManager.setTriggerMask(Replay.getGameTriggers(replayFrame) & ~(1 << InputType.UP.getIndex()));
   }
   
   private void deleteScoreByName(String name, int rowIndex) {
@@ -213,7 +438,11 @@ public class GameManager implements IDisplay {
 
   public void updateGame() {
     soundManager.rewindAllSoundEffects();
-    if (!(countDown > 0)) {
+    if (playback != null) {
+      //Intense mode switches in the frames it did in the recorded game
+      if (((replayFrame & Replay.INTENSE) != 0) != intenseMode)
+        changeMode();
+    } else if (!(countDown > 0)) {
       if(this.alwaysIntense) {
         this.soundManager.gameMusic.skip(soundManager.transitionPoints[0] - this.soundManager.gameMusic.position());
       } else {
@@ -225,7 +454,14 @@ public class GameManager implements IDisplay {
 
     if (startDelay > 0) {
       startDelay--;
+      recordFrame(false);
     } else {
+      //Recorded before the update, which starts the next game if this one tops out
+      recordFrame(true);
+
+      //The AI presses its buttons before the game updates, the same as a player's inputs
+      if (inactiveTimer == 0)
+        gridManager.moveToAITarget();
       gridManager.update();
     }
 
@@ -239,9 +475,14 @@ public class GameManager implements IDisplay {
       inactiveTimer = 1200;
     }
 
+    stopRecording();
+    deleteSavedGame();
     soundManager.rewindMusic();
-    if (score > 0)
+    if (inactiveTimer == 0)
+      savePlacementCache();
+    if (score > 0 && playback == null)
       saveScore();
+    playback = null;
     startGame(this.startLevel);
   }
 
@@ -251,15 +492,36 @@ public class GameManager implements IDisplay {
       inputManager.checkControllerInputs();
     }
     inputManager.updateInputTriggers();
+    if (playback != null)
+      playReplayFrame();
+    frameTriggers = inputManager.getTriggerMask();
+
+    boolean paused = inMenu;
+    GridManager played = gridManager;
     evaluateInputs();
 
     if (inMenu) {
+      //UP paused the game after the other buttons of this frame (unless they started a new game).
+      //The buttons after UP went to the menu, so only the ones the game ran are recorded.
+      if (!paused && gridManager == played) {
+        frameTriggers = Replay.getRecordedTriggers(frameTriggers, paused);
+        recordFrame(false);
+      }
+    } else if (playback != null && (replayFrame & (1 << InputType.UP.getIndex())) != 0) {
+      //The player paused here, the game did not update
     } else {
+      //If B closed the menu in this frame, the buttons went to the menu and not to the game
+      frameTriggers = Replay.getRecordedTriggers(frameTriggers, paused);
       updateGame();
       if (inactiveTimer == 0) {
-        gridManager.moveToAITarget();
         this.name = "AI";
       }
+
+      //Only a player's game is saved, not the AI's or a replay
+      if (resumeFile != null && inactiveTimer > 0 && playback == null && --saveTimer <= 0) {
+        saveTimer = saveInterval;
+        saveGame();
+      }
     }
 
     gridManager.display(intenseMode);
@@ -352,6 +614,171 @@ public class GameManager implements IDisplay {
     inactiveTimer = 1200;
   }
 
+  /*
+   * Saves everything the game being played depends on: the engine and render view (see
+   * GridManager.writeState), the start delay, intense mode, the cheat codes and the music position.
+   * Writes about 400 bytes and does not allocate.
+   */
+  public void writeState(ByteBuffer buffer) {
+    buffer.put((byte) SAVE_VERSION);
+    buffer.put((byte) (Randomizer.BAG.equals(this.randomizer) ? 1 : 0));
+    buffer.putLong(this.gameSeed);
+    buffer.putShort((short) this.name.length());
+    for (int i = 0; i < this.name.length(); i++) {
+      buffer.putChar(this.name.charAt(i));
+    }
+    buffer.put((byte) this.startLevel);
+    buffer.putShort((short) this.startDelay);
+    buffer.put((byte) ((intenseMode ? 1 : 0) | (alwaysIntense ? 2 : 0) | (jeff ? 4 : 0) | (madeTop10 ? 8 : 0) | (madeTop2 ? 16 : 0)));
+    buffer.putInt(soundManager.gameMusic.position());
+    buffer.put((byte) soundManager.currentMusic);
+    gridManager.writeState(buffer);
+  }
+
+  /*
+   * Returns true if readState could restore the state at the buffer's position: it was saved by this
+   * version with the same randomizer, it is complete and every value is in range. Reads past the state.
+   */
+  public boolean checkState(ByteBuffer buffer) {
+    if (buffer.remaining() < 1 + 1 + 8 + 2 || buffer.get() != SAVE_VERSION || (buffer.get() == 1) != Randomizer.BAG.equals(this.randomizer))
+      return false;
+    buffer.getLong();
+    int length = buffer.getShort();
+    if (length < 0 || buffer.remaining() < length * 2 + 1 + 2 + 1 + 4 + 1)
+      return false;
+    buffer.position(buffer.position() + length * 2);
+
+    int startLevel = buffer.get();
+    int startDelay = buffer.getShort();
+    int flags = buffer.get();
+    int position = buffer.getInt();
+    int currentMusic = buffer.get();
+    if (startLevel < 0 || startLevel > GameEngine.MAX_LEVEL || startDelay < 0 || (flags & ~31) != 0 || position < 0 ||
+      currentMusic < 0 || currentMusic >= soundManager.transitionPoints.length)
+      return false;
+    return gridManager.checkState(buffer);
+  }
+
+  //Restores a state saved by writeState. Returns false, changing nothing, if checkState rejects it.
+  public boolean readState(ByteBuffer buffer) {
+    if (!checkState(buffer.duplicate()))
+      return false;
+    buffer.get();
+    buffer.get();
+
+    this.gameSeed = buffer.getLong();
+    char[] name = new char[buffer.getShort()];
+    for (int i = 0; i < name.length; i++) {
+      name[i] = buffer.getChar();
+    }
+    this.name = new String(name);
+    this.oldName = this.name;
+    this.startLevel = buffer.get();
+    this.startDelay = buffer.getShort();
+    int flags = buffer.get();
+    this.intenseMode = (flags & 1) != 0;
+    this.alwaysIntense = (flags & 2) != 0;
+    this.jeff = (flags & 4) != 0;
+    this.madeTop10 = (flags & 8) != 0;
+    this.madeTop2 = (flags & 16) != 0;
+    int position = buffer.getInt();
+    soundManager.currentMusic = buffer.get();
+    gridManager.readState(buffer);
+
+    textFont(this.intenseMode ? this.modernFont : this.classicFont);
+    soundManager.gameMusic.cue(position);
+    this.countDown = soundManager.transitionPoints[soundManager.currentMusic] - position;
+
+    //The replay of a resumed game could not be played from its seed
+    this.pendingReplay = null;
+    return true;
+  }
+
+  /*
+   * Saves the state on the draw thread and writes it on the saver thread. Written to a new file that
+   * replaces the old one, so a power cut never leaves half a save. Skipped while the last save is
+   * still being written, since that one is still using the buffer.
+   */
+  private void saveGame() {
+    if (saving != null && !saving.isDone())
+      return;
+
+    saveBuffer.clear();
+    writeState(saveBuffer);
+    saveBuffer.flip();
+    saving = saver.submit(new Runnable() {
+      public void run() {
+        writeSave();
+      }
+    });
+  }
+
+  private void writeSave() {
+    Path path = new File(resumeFile).toPath();
+    Path temp = new File(resumeFile + ".tmp").toPath();
+    try {
+      FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      try {
+        while (saveBuffer.hasRemaining()) {
+          channel.write(saveBuffer);
+        }
+        //On the disk before the rename is, or a power cut could leave an empty file in its place
+        channel.force(true);
+      } finally {
+        channel.close();
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      println("Could not save the game: " + e.getMessage());
+    }
+  }
+
+  //Continues the game that was being played when the cabinet lost power, if one was saved
+  public void resumeSavedGame() {
+    if (resumeFile == null || playback != null || !new File(resumeFile).exists())
+      return;
+
+    try {
+      FileChannel channel = FileChannel.open(new File(resumeFile).toPath(), StandardOpenOption.READ);
+      try {
+        saveBuffer.clear();
+        while (saveBuffer.hasRemaining() && channel.read(saveBuffer) >= 0) {
+        }
+        saveBuffer.flip();
+      } finally {
+        channel.close();
+      }
+
+      if (readState(saveBuffer)) {
+        println("Resumed the saved game of " + this.name);
+        return;
+      }
+      println("The saved game is damaged, or was made by another version or randomizer");
+    } catch (IOException e) {
+      println("Could not load the saved game: " + e.getMessage());
+    } catch (RuntimeException e) {
+      println("Could not resume the saved game: " + e);
+      startGame(this.startLevel);
+    }
+
+    //Kept aside so it is not tried again on every boot
+    File saved = new File(resumeFile);
+    if (!saved.renameTo(new File(resumeFile + ".bad")))
+      saved.delete();
+  }
+
+  //Queued after any save being written, so that save can not bring the game back
+  private void deleteSavedGame() {
+    if (resumeFile != null) {
+      saver.execute(new Runnable() {
+        public void run() {
+          new File(resumeFile).delete();
+        }
+      });
+    }
+    this.saveTimer = this.saveInterval;
+  }
+
   public void shakeScreen() {
     if (gridManager.shakeTimer > 0) {
       translate(random(-width/50, width/50), random(-height/50, height/50));
@@ -373,11 +800,11 @@ public class GameManager implements IDisplay {
 
       //Transition animation
 
-      gridManager.setFallRate(gridManager.levelIntenseSpeeds[level]);
+      gridManager.setFallRate(gridManager.getEngine().getLevelSpeed(level, true));
     } else {
       soundManager.currentMusic = 2;
       textFont(this.classicFont);
-      gridManager.setFallRate(gridManager.levelSpeeds[level]);
+      gridManager.setFallRate(gridManager.getEngine().getLevelSpeed(level, false));
     }
   }
 
@@ -387,7 +814,7 @@ public class GameManager implements IDisplay {
 
   public void handleTetrisForJeff() {
     if(this.jeff) {
-      if(this.gridManager.lastDrought >= 15) {
+      if(this.gridManager.getEngine().getLastDrought() >= 15) {
         soundManager.playSoundEffect("IntenseBoom", false);
       } else {
         Random rng = new Random();
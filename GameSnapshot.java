@@ -0,0 +1,66 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * One saved game in a buffer that is reused by every save, see GameEngine.writeState. Saving and
+ * restoring copy about a hundred bytes and allocate nothing, so a search can fork a game as often
+ * as it likes. Snapshots can be written to a file, so a tool can start from a mid-game position.
+ */
+public class GameSnapshot {
+
+  public static final int MAX_SIZE = 256;
+
+  private final ByteBuffer buffer;
+
+  public GameSnapshot() {
+    this.buffer = ByteBuffer.allocate(MAX_SIZE);
+  }
+
+  public void save(GameEngine engine) {
+    buffer.clear();
+    engine.writeState(buffer);
+    buffer.flip();
+  }
+
+  //Puts an engine in the saved state. It must deal with the same randomizer type as the saved one.
+  public void restore(GameEngine engine) {
+    engine.readState(buffer);
+    buffer.rewind();
+  }
+
+  public void write(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      ByteBuffer state = buffer.duplicate();
+      while (state.hasRemaining()) {
+        channel.write(state);
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  public void read(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      buffer.clear();
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+      }
+      buffer.flip();
+    } finally {
+      channel.close();
+    }
+  }
+
+  // Getters
+  public ByteBuffer getBuffer() {
+    return this.buffer;
+  }
+
+  public int getSize() {
+    return this.buffer.limit();
+  }
+}
@@ -1,23 +1,15 @@
-public class GridManager implements IDisplay {
+import java.nio.ByteBuffer;
+
+public class GridManager implements IDisplay, GameListener {
 
   /*
   *Constants
    */
 
   //General settings
-  private final int pieceSpawnX;
   private final float nextBoxX;
   private final float nextBoxY;
-  private final int w;
-  private final int h;
-  private final int linesToLevelUp;
-  private final float levelFactor;
   private final int intenseColor;
-  private final int pieceSpawnDelay;
-
-  //level speeds
-  private final int[] levelSpeeds =        {45, 40, 35, 30, 26, 22, 18, 14, 11, 8, 6, 5, 4, 3, 2, 1, 0};
-  private final int[] levelIntenseSpeeds = {35, 30, 25, 22, 18, 15, 13, 11, 8, 6, 5, 4, 3, 2, 1, 0, 0}; 
 
   //Color Schemes
   private final int[][] colorScheme = {{#f44141, #f4a941, #f4e541, 0, 35}, 
@@ -34,24 +26,14 @@ public class GridManager implements IDisplay {
 
   private GameManager gameManager;
 
-  private Block[][] blocks;
+  private GameEngine engine;  //Runs the rules of the game, this class only adapts it for display
+  private Block[][] blocks;  //Render-side view of the board, only used for colors and display
   private float spacing;
   private float GridManagerEndPos;
 
   private Piece currentPiece;
   private Piece nextPiece;
-  private int nextPieceTimer;
-  private float AITargetPos;
-  private int AITargetRot;
-
-  private int topLine;
-  private int totalLinesCleared;
-  private ArrayList<Integer> linesToClear;
-  private int drought;
-  private int lastDrought;
-
-  private int fallRate;
-  private int fallTimer;
+
   private int shakeTimer;
   private float graphicsTimer;
   private int streakEffectTimer;
@@ -64,38 +46,24 @@ public class GridManager implements IDisplay {
   public GridManager(GameManager gameManager) {
 
     //Setting constants
-    this.pieceSpawnX = 5;
     this.nextBoxX = 12.5;
     this.nextBoxY = 4;
-    this.w = 10;
-    this.h = 24;
-    this.linesToLevelUp = 5;
-    this.levelFactor = 0.8;
     this.intenseColor = 45;
-    this.pieceSpawnDelay = 10;
 
     //setting fields
     this.gameManager = gameManager;
 
-    this.blocks = new Block[10][24];
+    this.engine = new GameEngine(gameManager.getLevel(), gameManager.createRandomizer());
+    this.engine.setListener(this);
+    this.blocks = new Block[GameEngine.WIDTH][GameEngine.HEIGHT];
     this.spacing = height/24f;
     this.GridManagerEndPos = this.spacing*this.blocks.length;
 
-    this.currentPiece = generateRandomPiece();
-    this.nextPiece = generateRandomPiece();
+    this.currentPiece = createPiece(engine.getPieceType());
+    this.nextPiece = createPiece(engine.getNextType());
     this.nextPiece.setPos(nextBoxX, nextBoxY);
-    this.nextPieceTimer = 0;
-    this.AITargetPos = 0;
-    this.AITargetRot = 0;
-    
-    this.topLine = h-1;
-    this.totalLinesCleared = 0;
-    this.linesToClear = new ArrayList<Integer>();
-    this.drought = 0;
-    this.lastDrought = 0;
-
-    this.fallRate =  this.levelSpeeds[gameManager.getLevel()];
-    this.fallTimer = fallRate;
+    syncCurrentPiece();
+
     this.shakeTimer = 0;
     this.graphicsTimer = 0;
     this.streakEffectTimer = 0;
@@ -105,54 +73,22 @@ public class GridManager implements IDisplay {
     this.gridImage = loadImage("gridImage.tif");
   }
 
-  public GridManager clone() {
-    GridManager tempGridManager = new GridManager(gameManager);
-
-    for (int i = 0; i < this.blocks.length; i++) {
-      for (int j = 0; j < this.blocks[1].length; j++) {
-        if (this.blocks[i][j] != null) {
-          tempGridManager.blocks[i][j] = this.blocks[i][j].clone();
-        }
-      }
-    }
-
-    tempGridManager.currentPiece = this.currentPiece.clone();
-
-    return tempGridManager;
-  }
-  
+  //Presses the AI's buttons for this frame. Plans the piece first if it has no path (the AI just took over, or the piece left its planned inputs).
   public void moveToAITarget(){
-    if(currentPiece.orientation != AITargetRot)
-      rotateCurrentPiece(true, false);
-    else{
-      if(currentPiece.x < AITargetPos)
-        moveCurrentPiece(Direction.RIGHT, true);
-      else if(currentPiece.x > AITargetPos)
-        moveCurrentPiece(Direction.LEFT, true);
+    if (!engine.hasAIPath()) {
+      if (gameManager.ai.isPlanningAsync())
+        gameManager.ai.applyPlan(engine);
       else
-        moveCurrentPiece(Direction.DOWN, true);
+        gameManager.ai.generateInputQueue(engine);
     }
+    engine.moveToAITarget();
   }
 
   public void update() {
 
     //move piece
-    if (!currentPiece.isLocked()) {
-      if (fallTimer > 0) {
-        fallTimer--;
-      } else {
-        moveCurrentPiece(Direction.DOWN, true);
-        fallTimer = fallRate;
-      }
-    } else if (nextPieceTimer > 0) {
-      //Waiting for next piece to spawn
-      nextPieceTimer--;
-    } else {
-      if (linesToClear.size() > 0) {
-        clearLines();
-      }
-      pushPiece();
-    }
+    engine.setIntenseMode(gameManager.isIntenseMode());
+    engine.update();
 
     //Running all effects
     for (int i = effects.size()-1; i >= 0; i--) {
@@ -185,6 +121,8 @@ public class GridManager implements IDisplay {
       graphicsTimer += .03;
     }
 
+    syncCurrentPiece();
+
     // Display blocks
     for (int i = 0; i < this.blocks.length; i++) {
       for (int j = 0; j < this.blocks[1].length; j++) {
@@ -219,276 +157,86 @@ public class GridManager implements IDisplay {
 
   //Piece functionality methods
 
-  public void pushPiece() {
-    
-    this.currentPiece = this.nextPiece;
-    this.currentPiece.setPos(pieceSpawnX, getPieceSpawnY(this.currentPiece.getType()));
-
-    //Checking if the player lost
-    for (Block b : this.currentPiece.getBlocks()) {
-      if (this.blocks[b.getX()][b.getY()] != null) {
-        //Jeff Mode
-        if(gameManager.jeff) {
-          gameManager.soundManager.playSoundEffect("Lost", false);
-        }
-
-        gameManager.reset();
-        return;
-      }
-    }
-
-    this.nextPiece = this.generateRandomPiece();
-    this.nextPiece.setPos(nextBoxX, nextBoxY);
-    
-    if (gameManager.inactiveTimer == 0) {
-      gameManager.ai.generateInputQueue(this);
-    }
-    
-    //Handle Droughts
-    if(this.currentPiece.type == PieceType.I) {
-      this.lastDrought = this.drought;
-      this.drought = 0;
-    } else {
-      this.drought++;
-    }
-    
-    //Jeff Mode
-    if(gameManager.jeff) {
-      if((this.drought == 15) && (this.currentPiece.type != PieceType.I)) {
-        gameManager.soundManager.playSoundEffect("Drought", false);
-      }
-
-      if((this.lastDrought >= 15) && (this.currentPiece.type == PieceType.I)) {
-        gameManager.soundManager.playSoundEffect("LongBar", false);
-      }
-    }
-
+  private Piece createPiece(PieceType type) {
+    return new Piece(engine.getPieceX(), engine.getPieceY(), type, this.spacing, getColorOfPiece(type), false);
   }
 
-  public Piece generateRandomPiece() {
-
-    Random rng = new Random();  //Creating a random number generator
-    int x = rng.nextInt(7);
-
-    float y = getPieceSpawnY(PieceType.get(x));
-    Piece piece = new Piece(pieceSpawnX, y, PieceType.get(x), this.spacing, getColorOfPiece(PieceType.get(x)), false);  //Create a piece with random piece type
-
-    return piece;
+  //Moves the displayed piece to where the engine has it
+  private void syncCurrentPiece() {
+    this.currentPiece.setOrientation(engine.getPieceOrientation());
+    this.currentPiece.setPos(engine.getPieceX(), engine.getPieceY());
   }
-  
-  
-  // Returns true if piece has collided
-  private boolean moveCurrentPiece(Direction dir, boolean handleCollisions) {
-    switch(dir) {
-    case DOWN:
-      if (!checkCollisions(dir, handleCollisions)) {
-        currentPiece.setY(currentPiece.getY() + 1);
-        return false;
-      }
-      return true;
-    case LEFT:
-      if (!checkCollisions(dir, handleCollisions)) {
-        currentPiece.setX(currentPiece.getX() - 1);
-        return false;
-      } else {
-        gameManager.charge(InputType.LEFT);
-        return true;
-      }
-    case RIGHT:
-      if (!checkCollisions(dir, handleCollisions)) {
-        currentPiece.setX(currentPiece.getX() + 1);
-        return false;
-      } else {
-        gameManager.charge(InputType.RIGHT);
-        return true;
-      }
-    default:
-      break;
-    }
-    currentPiece.updateBlocks();
-    return false;
+
+  public boolean moveCurrentPiece(Direction dir, boolean handleCollisions) {
+    return engine.moveCurrentPiece(dir, handleCollisions);
   }
 
   public void rotateCurrentPiece(boolean cw, boolean dontCheck) {
-    switch(currentPiece.type) {
-    case O:
-      break;
-
-    case S:
-    case Z:
-    case I:
-      if (currentPiece.orientation == 1) {
-        if (dontCheck || !checkRotationCollision(false))
-          currentPiece.rotate(false);
-      } else
-        if (dontCheck || !checkRotationCollision(true))
-          currentPiece.rotate(true);
-      break;
-
-    case L:
-    case J:
-    case T:
-      if (dontCheck || !checkRotationCollision(cw))
-        currentPiece.rotate(cw);
-      break;
-    default:
-      break;
-    }
+    engine.rotateCurrentPiece(cw, dontCheck);
   }
 
 
-  //Calculation methods
-
-  /* 
-   Directions:
-   1 = down
-   2 = left
-   3 = right
-   */
-private boolean checkCollisions(Direction dir, boolean handleCollisions) {
-    if (!currentPiece.isLocked()) {
-      Block[] pieceBlocks = new Block[currentPiece.getBlocks().length];
-
-      //Clone piece blocks and move the piece by 1 unit
-      for (int i = 0; i < pieceBlocks.length; i++) {
-        pieceBlocks[i] = currentPiece.getBlocks()[i].clone();
-        switch(dir) {
-        case DOWN:
-          pieceBlocks[i].setY(pieceBlocks[i].getY() + 1);
-          break;
-        case LEFT:
-          pieceBlocks[i].setX(pieceBlocks[i].getX() - 1);
-          break;
-        case RIGHT:
-          pieceBlocks[i].setX(pieceBlocks[i].getX() + 1);
-          break;
-        default:
-          break;
-        }
-      }
-
-      //Iterating through pieces
-      for (int i = 0; i < pieceBlocks.length; i++) {
-        if (pieceBlocks[i].y >= h) {
-          //Collision with bottom
-          if(handleCollisions)
-            handleCollision();
-          return true;
-        } else if (pieceBlocks[i].x >= w || pieceBlocks[i].x < 0) {
-          return true;
-        } else {
-          for (int x = 0; x < this.blocks.length; x++) {
-            for (int y = 0; y < this.blocks[0].length; y++) {
-              if (this.blocks[x][y] != null) {
-                Block b = this.blocks[x][y].clone();
-                if ((b.x == pieceBlocks[i].x) && (b.y == pieceBlocks[i].y)) {
-                  if (dir == Direction.DOWN && handleCollisions)
-                    handleCollision();
-                  return true;
-                }
-              }
-            }
-          }
-        }
-      }
-
-      return false;
-    } else {
-      return true;
-    }
-  }
+  //Game events
 
-  public boolean checkRotationCollision(boolean cw) {
-    Block[] pieceBlocks = new Block[currentPiece.getBlocks().length];
+  @Override
+    public void onPieceSpawned() {
 
-    rotateCurrentPiece(cw, true);
+    this.currentPiece = this.nextPiece;
+    syncCurrentPiece();
 
-    for (int i = 0; i < pieceBlocks.length; i++) {
-      pieceBlocks[i] = currentPiece.getBlocks()[i].clone();
+    this.nextPiece = createPiece(engine.getNextType());
+    this.nextPiece.setPos(nextBoxX, nextBoxY);
+    
+    if (gameManager.inactiveTimer == 0 && !gameManager.ai.isPlanningAsync()) {
+      gameManager.ai.generateInputQueue(engine);
     }
-
-    rotateCurrentPiece(!cw, true);
-
-    for (int i = 0; i < pieceBlocks.length; i++) {
-      if (pieceBlocks[i].y >= h || pieceBlocks[i].x >= w || pieceBlocks[i].x < 0) {
-        return true;
-      } else {
-        for (int x = 0; x < this.blocks.length; x++) {
-          for (int y = 0; y < this.blocks[0].length; y++) {
-            if (this.blocks[x][y] != null) {
-              Block b = this.blocks[x][y].clone();
-              if ((b.x == pieceBlocks[i].x) && (b.y == pieceBlocks[i].y)) 
-                return true;
-            }
-          }
-        }
+    
+    //Jeff Mode
+    if(gameManager.jeff) {
+      if((engine.getDrought() == 15) && (engine.getPieceType() != PieceType.I)) {
+        gameManager.soundManager.playSoundEffect("Drought", false);
       }
-    }
-    return false;
-  }
 
-  private void handleCollision() {
-    Block[] pieceBlocks = this.currentPiece.getBlocks().clone();
-
-    for (int z = 0; z < pieceBlocks.length; z++) {
-      int x = pieceBlocks[z].getX();
-      int y = pieceBlocks[z].getY();
-      if (y >= 0)
-        this.blocks[x][y] = pieceBlocks[z].clone();
-      else
-        gameManager.reset();
+      if((engine.getLastDrought() >= 15) && (engine.getPieceType() == PieceType.I)) {
+        gameManager.soundManager.playSoundEffect("LongBar", false);
+      }
     }
 
-    checkLines();
-
-    topLine = calculateTopLine();
-
-    effects.add(new ExplodeEffect(this.currentPiece.getX()*spacing, this.currentPiece.getY()*spacing, 10, true, spacing));
-    shakeTimer = 8;
-
-    this.currentPiece.setLocked(true);
-    nextPieceTimer = pieceSpawnDelay;
   }
 
-
-  private int calculateTopLine() {
-    for (int y = 0; y < h; y++) {
-      for (int x = 0; x < w; x++) {
-        if (this.blocks[x][y] != null)
-          return y;
-      }
+  @Override
+    public void onTopOut() {
+    //Jeff Mode
+    if(gameManager.jeff) {
+      gameManager.soundManager.playSoundEffect("Lost", false);
     }
 
-    return h-1;
+    gameManager.reset();
   }
 
-  private void checkLines() {
-    this.linesToClear = new ArrayList<Integer>();
-
-    for (int y = 0; y < this.blocks[0].length; y++) {
-      int counter = 0;  //Number of squares that are filled
+  @Override
+    public void onPieceLocked(int lines) {
+    syncCurrentPiece();
 
-      for (int x = 0; x < this.blocks.length; x++) {
-        if (this.blocks[x][y] != null) 
-          counter++;
-      }
+    for (Block b : this.currentPiece.getBlocks()) {
+      if (b.getY() >= 0)
+        this.blocks[b.getX()][b.getY()] = b.clone();
+    }
 
-      if (counter == w) {  //All squares are filled
+    int lineCount = 0;
+    float avgY = 0;
+    for (int y = 0; y < GameEngine.HEIGHT; y++) {
+      if ((lines & (1 << y)) != 0) {
         effects.add(new LineClearEffect(0, (y)*spacing, 10, false, spacing));
-        this.linesToClear.add(y);
+        lineCount++;
+        avgY += y;
       }
     }
 
-    if(linesToClear.size() == 0) {
+    if(lineCount == 0) {
       gameManager.soundManager.playSoundEffect("Drop", gameManager.intenseMode);
-    } else if(linesToClear.size() == 4) {
+    } else if(lineCount == 4) {
       //add tetris visual effect
-      float avgY = 0;
-
-      for (int i = 0; i < 4; i++) {
-        avgY += linesToClear.get(i);
-      }
-
       avgY /= 4;
 
       effects.add(new LineExplodeEffect((spacing*10)/2, avgY*spacing, 200, true, 13));
@@ -499,39 +247,26 @@ private boolean checkCollisions(Direction dir, boolean handleCollisions) {
       gameManager.soundManager.playSoundEffect("Clear", gameManager.intenseMode);
     }
 
-
-    if (linesToClear.size() == 4) {
-
+    //Start planning the next piece during the spawn delay
+    if (gameManager.inactiveTimer == 0 && gameManager.ai.isPlanningAsync()) {
+      gameManager.ai.planNextPiece(engine);
     }
+
+    effects.add(new ExplodeEffect(this.currentPiece.getX()*spacing, this.currentPiece.getY()*spacing, 10, true, spacing));
+    shakeTimer = 8;
   }
 
-  private void clearLines() {
-    for (int i = 0; i < this.linesToClear.size(); i++) {
-      clearLine(this.linesToClear.get(i));
+  @Override
+    public void onLinesCleared(int lines, int count) {
+    for (int y = 0; y < GameEngine.HEIGHT; y++) {
+      if ((lines & (1 << y)) != 0)
+        clearLine(y);
     }
 
     // Add to score
-    float factor = 1 + levelFactor * gameManager.getLevel();
-    if (linesToClear.size() == 4) {
-      gameManager.setScore(round(gameManager.getScore() + (1000 * factor)));
-
+    gameManager.setScore(engine.getScore());
+    if (count == 4) {
       gameManager.handleTetrisForJeff();
-
-      linesToClear = new ArrayList<Integer>();
-    } else if (linesToClear.size() == 3) {
-      gameManager.setScore(round(gameManager.getScore() + (600 * factor)));
-      linesToClear = new ArrayList<Integer>();
-    } else if (linesToClear.size() == 2) {
-      gameManager.setScore(round(gameManager.getScore() + (300 * factor)));
-      linesToClear = new ArrayList<Integer>();
-    } else {
-      gameManager.setScore(round(gameManager.getScore() + (100 * factor)));
-      linesToClear = new ArrayList<Integer>();
-    }
-
-    //Add to level
-    if ((totalLinesCleared >= linesToLevelUp * (gameManager.getLevel()+1)) && gameManager.level != 16) {
-      levelUp();
     }
 
     //Jeff mode
@@ -555,10 +290,11 @@ private boolean checkCollisions(Direction dir, boolean handleCollisions) {
     
   }
 
+  //Shifts the render view the same way the engine shifted the board
   private void clearLine(int line) {
 
     for (int y = line - 1; y >= 0; y--) {
-      for (int x = 0; x < w; x++) {
+      for (int x = 0; x < GameEngine.WIDTH; x++) {
         Block b = this.blocks[x][y];
         if (b != null)
           this.blocks[x][y].setY(this.blocks[x][y].getY() + 1);
@@ -566,12 +302,15 @@ private boolean checkCollisions(Direction dir, boolean handleCollisions) {
         this.blocks[x][y+1] = this.blocks[x][y];
       }
     }
-    totalLinesCleared++;
+    for (int x = 0; x < GameEngine.WIDTH; x++) {
+      this.blocks[x][0] = null;
+    }
   }
 
-  private void levelUp() {
+  @Override
+    public void onLevelUp() {
 
-    gameManager.setLevel(gameManager.getLevel() + 1);
+    gameManager.setLevel(engine.getLevel());
 
     //update block colors
     for (Block[] bArray : this.blocks) {
@@ -584,13 +323,14 @@ private boolean checkCollisions(Direction dir, boolean handleCollisions) {
 
     //update next piece color
     this.nextPiece.setColor(getColorOfPiece(this.nextPiece.getType()));
+  }
 
-
-    //change fall rate
-    if (gameManager.isIntenseMode())
-      fallRate = levelIntenseSpeeds[Math.min(gameManager.getLevel(), levelSpeeds.length - 1)];
+  @Override
+    public void onMoveBlocked(Direction dir) {
+    if (dir == Direction.LEFT)
+      gameManager.charge(InputType.LEFT);
     else
-      fallRate = levelSpeeds[Math.min(gameManager.getLevel(), levelSpeeds.length-1)];
+      gameManager.charge(InputType.RIGHT);
   }
 
   private int[] getColorOfPiece(PieceType type) {
@@ -618,17 +358,54 @@ private boolean checkCollisions(Direction dir, boolean handleCollisions) {
     return c;
   }
 
-  public float getPieceSpawnY(PieceType p) {
-    float y;
-    switch(p) {
-    case S:
-    case Z:
-    case O:
-      y = 0.5;
-    default:
-      y = 0;
-      return y;
+  //Saves the game and its render view: the engine state, the type of every locked block and the shake timer
+  public void writeState(ByteBuffer buffer) {
+    engine.writeState(buffer);
+    for (int x = 0; x < GameEngine.WIDTH; x++) {
+      for (int y = 0; y < GameEngine.HEIGHT; y++) {
+        Block b = this.blocks[x][y];
+        buffer.put((byte) (b == null ? 0 : b.getPieceType().getIndex() + 1));
+      }
+    }
+    buffer.put((byte) shakeTimer);
+  }
+
+  //Returns true if readState could restore the state at the buffer's position, reading past it
+  public boolean checkState(ByteBuffer buffer) {
+    if (!engine.checkState(buffer) || buffer.remaining() < GameEngine.WIDTH * GameEngine.HEIGHT + 1)
+      return false;
+    for (int i = 0; i < GameEngine.WIDTH * GameEngine.HEIGHT; i++) {
+      int type = buffer.get();
+      if (type < 0 || type > PieceShape.TYPES)
+        return false;
     }
+    return buffer.get() >= 0;
+  }
+
+  //Restores a state saved by writeState and rebuilds the render view from it. Running effects are dropped.
+  public void readState(ByteBuffer buffer) {
+    engine.readState(buffer);
+    gameManager.setLevel(engine.getLevel());
+    gameManager.setScore(engine.getScore());
+
+    for (int x = 0; x < GameEngine.WIDTH; x++) {
+      for (int y = 0; y < GameEngine.HEIGHT; y++) {
+        int type = buffer.get();
+        if (type == 0) {
+          this.blocks[x][y] = null;
+        } else {
+          PieceType pieceType = PieceType.get(type - 1);
+          this.blocks[x][y] = new Block(x, y, this.spacing, getColorOfPiece(pieceType), pieceType);
+        }
+      }
+    }
+    this.shakeTimer = buffer.get();
+    this.effects.clear();
+
+    this.currentPiece = createPiece(engine.getPieceType());
+    this.nextPiece = createPiece(engine.getNextType());
+    this.nextPiece.setPos(nextBoxX, nextBoxY);
+    syncCurrentPiece();
   }
 
   // Getters and setters
@@ -636,35 +413,35 @@ private boolean checkCollisions(Direction dir, boolean handleCollisions) {
     return this.GridManagerEndPos;
   }
 
+  public GameEngine getEngine() {
+    return this.engine;
+  }
+
   public Piece getCurrentPiece() {
     return this.currentPiece;
   }
 
   public void setFallRate(int fallRate) {
-    this.fallRate = fallRate;
+    engine.setFallRate(fallRate);
   }
 
   public int getFallRate() {
-    return this.fallRate;
+    return engine.getFallRate();
   }
 
   public int getFallTimer() {
-    return this.fallTimer;
+    return engine.getFallTimer();
   }
 
   public int getTopLine() {
-    return this.topLine;
+    return engine.getTopLine();
   }
 
   public int getTotalLinesCleared() {
-    return this.totalLinesCleared;
+    return engine.getTotalLinesCleared();
   }
 
   public void setFallTimer(int fallTimer) {
-    this.fallTimer = fallTimer;
-  }
-
-  public void setCurrentPiece(Piece currentPiece) {
-    this.currentPiece = currentPiece;
+    engine.setFallTimer(fallTimer);
   }
 }
\ No newline at end of file
@@ -74,7 +74,11 @@ public class IniFile {
       if(kv == null) {
          return defaultvalue;
       }
-      return kv.get(key);
+      String value = kv.get(key);
+      if(value == null) {  //The section is there but the key is not, as in a config written before the key was added
+         return defaultvalue;
+      }
+      return value;
    }
 
    //Gets an int value from the specified section and key.
@@ -83,7 +87,24 @@ public class IniFile {
       if(kv == null) {
          return defaultvalue;
       }
-      return Integer.parseInt(kv.get( key ));
+      String value = kv.get(key);
+      if(value == null) {
+         return defaultvalue;
+      }
+      return Integer.parseInt(value);
+   }
+
+   //Gets a long value from the specified section and key.
+   public long getLong(String section, String key, long defaultvalue) {
+      Map<String, String> kv = _entries.get(section);
+      if(kv == null) {
+         return defaultvalue;
+      }
+      String value = kv.get(key);
+      if(value == null) {
+         return defaultvalue;
+      }
+      return Long.parseLong(value);
    }
 
    //Gets a float value from the specified section and key.
@@ -92,7 +113,11 @@ public class IniFile {
       if(kv == null) {
          return defaultvalue;
       }
-      return Float.parseFloat(kv.get( key ));
+      String value = kv.get(key);
+      if(value == null) {
+         return defaultvalue;
+      }
+      return Float.parseFloat(value);
    }
 
    //Gets a double value from the specified section and key.
@@ -101,6 +126,10 @@ public class IniFile {
       if(kv == null) {
          return defaultvalue;
       }
-      return Double.parseDouble(kv.get( key ));
+      String value = kv.get(key);
+      if(value == null) {
+         return defaultvalue;
+      }
+      return Double.parseDouble(value);
    }
 }
\ No newline at end of file
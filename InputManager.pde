@@ -40,6 +40,23 @@ public class InputManager {
     println();
   }
 
+  //The triggers of this frame as bits, bit i for InputType index i
+  public int getTriggerMask() {
+    int mask = 0;
+    for (int i = 0; i < triggers.length; i++) {
+      if (triggers[i])
+        mask |= 1 << i;
+    }
+    return mask;
+  }
+
+  //Replaces the triggers of this frame, used to play replays
+  public void setTriggerMask(int mask) {
+    for (int i = 0; i < triggers.length; i++) {
+      triggers[i] = (mask & (1 << i)) != 0;
+    }
+  }
+
   public void updateInputTriggers() {
     for (int i = 0; i < inputs.length; i++) {
       if (inputs[i]) {
@@ -0,0 +1,366 @@
+import java.util.Arrays;
+
+/*
+ * Plans the inputs that take a piece to a placement in as few frames as possible.
+ *
+ * The planner does a breadth first search one frame at a time, like MoveGenerator does one move
+ * at a time. In every frame any mix of left or right, soft drop and one rotation can be pressed.
+ * They are applied in the order GameManager runs triggered buttons (LEFT, RIGHT, DOWN, A, B),
+ * then gravity runs with the engine's fall timer, so the sequence is exact to the frame.
+ *
+ * A fresh press triggers on the frame it is seen (InputManager.setPressInput), and the button has
+ * to be seen released for a frame before it can be pressed again. Holding LEFT, RIGHT, A or B never
+ * gets there sooner with the in-game DAS delays (13 frames for moves and 18 for rotations before
+ * the first repeat), so those are always taps. Soft drop has no delay in game: held, it triggers on
+ * the frame it is pressed and the next one, then on frames 4 and 5, 8 and 9... Pressed and held
+ * for one more frame every three frames, it triggers on frames 0, 1, 3, 4, 6, 7... So DOWN is
+ * searched as triggering on at most two frames in a row.
+ *
+ * A state is skipped when the same position was already reached, in the same frame or an earlier
+ * one, as many frames before gravity and with only some of its buttons held (a second DOWN in a
+ * row counts as one more button): whatever it can press next frame, that state can too, and
+ * gravity pulls both down at the same time. It is also skipped when the position was reached
+ * earlier with more frames left before gravity, as that state can wait there until it has as many.
+ * Waiting is never skipped that way, so the states it stands for are really searched. A piece
+ * that waited gets where it could have gone the frame before, so it only tries the buttons it had
+ * to release then (until gravity runs).
+ *
+ * Most states can not get to the target in time, so every search has a bound on the frames: a
+ * state is left out when even the fastest taps, rotations and drops from it can not lock at the
+ * target within the bound. The first bound is the fewest frames the target could take from the
+ * start, and it is raised until a path is found or nothing was left out. The first path found is
+ * still one with the fewest frames, for a few times less work than searching every state.
+ *
+ * The result is one trigger mask per frame (bit i is InputType index i) and the state the piece
+ * should be in at the start of every frame, so the player of the inputs can tell when the game
+ * went somewhere the plan did not expect.
+ */
+public class InputPlanner {
+
+  //Longest sequence planned
+  public static final int MAX_FRAMES = 1024;
+
+  //Position encoding, the same as MoveGenerator
+  private static final int xOffset = 4;
+  private static final int xRange = 16;
+  private static final int yOffset = 2;
+  private static final int yRange = GameEngine.HEIGHT + yOffset;
+  private static final int positions = PieceShape.ORIENTATIONS * yRange * xRange;
+
+  private static final int LEFT = 1 << InputType.LEFT.getIndex();
+  private static final int RIGHT = 1 << InputType.RIGHT.getIndex();
+  private static final int DOWN = 1 << InputType.DOWN.getIndex();
+  private static final int A = 1 << InputType.A.getIndex();
+  private static final int B = 1 << InputType.B.getIndex();
+  //Set with DOWN when DOWN triggered in the last two frames. UP is never planned, so its bit is free.
+  private static final int REPEAT = 1 << InputType.UP.getIndex();
+
+  //Bit b of subsets[m] is set when the buttons of b are some of the buttons of m
+  private static final long[] subsets = new long[64];
+  static {
+    for (int m = 0; m < 64; m++) {
+      for (int b = m; ; b = (b - 1) & m) {
+        subsets[m] |= 1L << b;
+        if (b == 0)
+          break;
+      }
+    }
+  }
+
+  //Masks pressed in a frame, fewer buttons first so the first path found uses the fewest presses
+  private static final int[] actions = {
+    0, LEFT, RIGHT, DOWN, A, B,
+    LEFT | DOWN, RIGHT | DOWN, LEFT | A, LEFT | B, RIGHT | A, RIGHT | B, DOWN | A, DOWN | B,
+    LEFT | DOWN | A, LEFT | DOWN | B, RIGHT | DOWN | A, RIGHT | DOWN | B
+  };
+
+  //Dominance, by frames left before gravity (the phase)
+  private final int[] seen;  //Search number a position was last reached in
+  private final int[] seenPhase;  //Search number a position was last reached in a phase in, position * 64 + phase
+  private final long[] seenPressed;  //Bit b is set when reached with the buttons of b pressed, the same index
+  private final int[] bestPhase;  //Most frames left before gravity a position was reached with
+  private final int[] collisionPlan;  //Plan number the collision of a position was found in
+  private final boolean[] collision;
+  private final int[] gravityTicks;  //Frames gravity runs in before each frame
+
+  //Search nodes in the order they are reached, so they are also the queue.
+  //State: position * 64 + the buttons pressed in the frame before, with REPEAT
+  private int[] nodeState;
+  private int[] nodeParent;
+  private int[] nodeAction;
+  private int searchNumber;
+  private int planNumber;
+  private boolean cut;  //A state was left out of the search for taking more frames than its bound
+
+  public InputPlanner() {
+    this.seen = new int[positions];
+    this.seenPhase = new int[positions * 64];
+    this.seenPressed = new long[positions * 64];
+    this.bestPhase = new int[positions];
+    this.collisionPlan = new int[positions];
+    this.collision = new boolean[positions];
+    this.gravityTicks = new int[MAX_FRAMES + 2 * xRange];
+    this.nodeState = new int[positions * 64];
+    this.nodeParent = new int[positions * 64];
+    this.nodeAction = new int[positions * 64];
+    this.searchNumber = 0;
+    this.planNumber = 0;
+  }
+
+  /*
+   * Plans the inputs that lock the piece of start at (orientation, x, y). fallTimer and fallRate
+   * are the engine's, as they will be when the first frame is played. Writes the trigger mask of
+   * every frame to inputs and the state at the start of every frame to states. Gives up once
+   * System.nanoTime() is past deadline.
+   * Returns the number of frames, or 0 if the placement can not be reached in time.
+   */
+  public int plan(SearchState start, int fallTimer, int fallRate, int orientation, int x, int y, long deadline, int[] inputs, int[] states) {
+    int type = start.getType();
+    planNumber++;
+    if (start.getBoard().collides(type, start.getOrientation(), start.getX(), start.getY()))
+      return 0;
+    for (int f = 0; f + 1 < gravityTicks.length; f++) {
+      gravityTicks[f + 1] = gravityTicks[f] + (phase(f, fallTimer, fallRate) == 0 ? 1 : 0);
+    }
+
+    //The fewest frames the target could take, searched again with more until nothing was cut off
+    int bound = 1;
+    while (bound < MAX_FRAMES && !canReach(type, start.getOrientation(), start.getX(), start.getY(), 0, 0, bound, orientation, x, y)) {
+      bound++;
+    }
+    while (true) {
+      cut = false;
+      int frames = search(start, fallTimer, fallRate, orientation, x, y, bound, deadline, inputs, states);
+      if (frames != 0 || !cut || bound == MAX_FRAMES)
+        return Math.max(frames, 0);
+      bound = Math.min(bound + Math.max(bound / 4, 2), MAX_FRAMES);
+    }
+  }
+
+  //One breadth first search that only keeps states that can still lock at the target in bound frames.
+  //Returns the number of frames, 0 if there is no such path and -1 if the deadline passed.
+  private int search(SearchState start, int fallTimer, int fallRate, int orientation, int x, int y, int bound, long deadline, int[] inputs, int[] states) {
+    Board board = start.getBoard();
+    int type = start.getType();
+    int target = position(orientation, x, y);
+    searchNumber++;
+
+    int head = 0;
+    int tail = 0;
+    int first = position(start.getOrientation(), start.getX(), start.getY());
+    markSeen(first, 0, phase(0, fallTimer, fallRate));
+    nodeState[tail] = first * 64;
+    nodeParent[tail++] = -1;
+
+    for (int frame = 0; frame < bound && head < tail; frame++) {
+      boolean gravity = phase(frame, fallTimer, fallRate) == 0;
+      int nextPhase = phase(frame + 1, fallTimer, fallRate);
+      int layerEnd = tail;
+
+      while (head < layerEnd) {
+        //A frame can have thousands of states, so the time is checked every few
+        if ((head & 15) == 0 && System.nanoTime() > deadline)
+          return -1;
+
+        int node = head++;
+        int s = nodeState[node];
+        int pos = s / 64;
+        int pressed = s % 64;
+
+        //A piece that waited since the frame before, with no gravity in this frame, gets where it
+        //would have then, a frame later. Only the buttons it could not press then are new.
+        int parent = nodeParent[node];
+        int waited = parent >= 0 && nodeAction[node] == 0 && nodeState[parent] / 64 == pos && !gravity ? nodeState[parent] % 64 : -1;
+
+        for (int action : actions) {
+          //A button pressed last frame has to be released for this one, DOWN only after two frames
+          if (!canPress(action, pressed) || (action != 0 && waited >= 0 && canPress(action, waited)))
+            continue;
+          int nextPressed = action;
+          if ((action & pressed & DOWN) != 0)
+            nextPressed |= REPEAT;
+
+          int o = decodeOrientation(pos);
+          int px = decodeX(pos);
+          int py = decodeY(pos);
+          boolean locked = false;
+
+          //A button that does nothing is skipped: the same buttons without it get as far, with fewer held
+          if ((action & LEFT) != 0) {
+            if (collides(board, type, o, px - 1, py))
+              continue;
+            px--;
+          } else if ((action & RIGHT) != 0) {
+            if (collides(board, type, o, px + 1, py))
+              continue;
+            px++;
+          }
+
+          if ((action & DOWN) != 0) {
+            if (collides(board, type, o, px, py + 1))
+              locked = true;
+            else
+              py++;
+          }
+
+          if ((action & (A | B)) != 0) {
+            int next = PieceShape.nextOrientation(type, o, (action & B) != 0);
+            if (locked || collides(board, type, next, px, py))
+              continue;
+            o = next;
+          }
+
+          if (!locked && gravity) {
+            if (collides(board, type, o, px, py + 1))
+              locked = true;
+            else
+              py++;
+          }
+
+          int next = position(o, px, py);
+          if (locked) {
+            if (next == target)
+              return writePath(node, action, frame + 1, inputs, states);
+            continue;
+          }
+          //Pieces never move up, so nothing below the target row can get back to it, nor anything
+          //that gravity takes there before the taps to the target column (every other frame) are done
+          int taps = Math.max(2 * Math.abs(px - x) - 1, 1);
+          if (py + gravityTicks[frame + taps] - gravityTicks[frame + 1] > y)
+            continue;
+          if (!canReach(type, o, px, py, nextPressed, frame + 1, bound, orientation, x, y)) {
+            cut = true;
+            continue;
+          }
+
+          if (!isDominated(next, nextPressed, nextPhase, action == 0 && next == pos)) {
+            markSeen(next, nextPressed, nextPhase);
+            if (tail == nodeState.length)
+              growNodes();
+            nodeState[tail] = next * 64 + nextPressed;
+            nodeParent[tail] = node;
+            nodeAction[tail++] = action;
+          }
+        }
+      }
+    }
+
+    return 0;
+  }
+
+  /*
+   * False if a piece at (o, px, py) at the start of a frame, with the buttons of pressed held the
+   * frame before, can not lock at (orientation, x, y) by the end of frame bound - 1 however it is
+   * played. Taps and rotations in one direction take every other frame. Locking takes one more try
+   * to move down than there are rows to go, and the piece tries at most once per soft drop (two
+   * frames in every three) and once per gravity frame.
+   */
+  private boolean canReach(int type, int o, int px, int py, int pressed, int frame, int bound, int orientation, int x, int y) {
+    int frames = bound - frame;
+    if (frames < 1)
+      return false;
+    if (px != x && 2 * Math.abs(px - x) - 1 + ((pressed & (px > x ? LEFT : RIGHT)) != 0 ? 1 : 0) > frames)
+      return false;
+    if (o != orientation && PieceShape.nextOrientation(type, o, true) != orientation && PieceShape.nextOrientation(type, o, false) != orientation && frames < 3)
+      return false;
+
+    int drops;
+    if ((pressed & REPEAT) != 0)
+      drops = frames - 1 - (frames - 1) / 3;
+    else if ((pressed & DOWN) != 0)
+      drops = frames < 2 ? frames : frames - 1 - (frames - 2) / 3;
+    else
+      drops = frames - frames / 3;
+    return py + drops + gravityTicks[bound] - gravityTicks[frame] > y;
+  }
+
+  //True if action can be pressed in the frame after the buttons of pressed
+  private static boolean canPress(int action, int pressed) {
+    if ((action & pressed & ~DOWN) != 0)
+      return false;
+    return (action & pressed & DOWN) == 0 || (pressed & REPEAT) == 0;
+  }
+
+  //Board.collides for the piece planned, remembered for the rest of the plan
+  private boolean collides(Board board, int type, int orientation, int x, int y) {
+    if (x + xOffset < 0 || x + xOffset >= xRange || y + yOffset >= yRange)
+      return board.collides(type, orientation, x, y);
+    int pos = position(orientation, x, y);
+    if (collisionPlan[pos] != planNumber) {
+      collisionPlan[pos] = planNumber;
+      collision[pos] = board.collides(type, orientation, x, y);
+    }
+    return collision[pos];
+  }
+
+  //Frames from the start of a frame until the next frame gravity runs in, 0 if it runs in this one
+  private static int phase(int frame, int fallTimer, int fallRate) {
+    if (frame <= fallTimer)
+      return fallTimer - frame;
+    return (fallRate + 1 - (frame - fallTimer) % (fallRate + 1)) % (fallRate + 1);
+  }
+
+  //True if pos was reached in the same phase with a subset of the buttons pressed, or, unless waiting there, in a later phase
+  private boolean isDominated(int pos, int pressed, int phase, boolean waiting) {
+    if (seen[pos] != searchNumber || phase >= 64)
+      return false;
+    if (!waiting && bestPhase[pos] > phase)
+      return true;
+    return seenPhase[pos * 64 + phase] == searchNumber && (seenPressed[pos * 64 + phase] & subsets[pressed]) != 0;
+  }
+
+  private void markSeen(int pos, int pressed, int phase) {
+    if (seen[pos] != searchNumber) {
+      seen[pos] = searchNumber;
+      bestPhase[pos] = -1;
+    }
+    if (phase < 64) {
+      if (seenPhase[pos * 64 + phase] != searchNumber) {
+        seenPhase[pos * 64 + phase] = searchNumber;
+        seenPressed[pos * 64 + phase] = 0;
+      }
+      seenPressed[pos * 64 + phase] |= 1L << pressed;
+    }
+    bestPhase[pos] = Math.max(bestPhase[pos], phase);
+  }
+
+  private void growNodes() {
+    nodeState = Arrays.copyOf(nodeState, nodeState.length * 2);
+    nodeParent = Arrays.copyOf(nodeParent, nodeParent.length * 2);
+    nodeAction = Arrays.copyOf(nodeAction, nodeAction.length * 2);
+  }
+
+  private int writePath(int last, int lastAction, int frames, int[] inputs, int[] states) {
+    int f = frames - 1;
+    inputs[f] = lastAction;
+    for (int node = last; node != -1; node = nodeParent[node]) {
+      int pos = nodeState[node] / 64;
+      states[f] = encodeState(decodeOrientation(pos), decodeX(pos), decodeY(pos));
+      if (nodeParent[node] != -1)
+        inputs[f - 1] = nodeAction[node];
+      f--;
+    }
+    return frames;
+  }
+
+  //A piece position packed in one int, used to check a plan against the game
+  public static int encodeState(int orientation, int x, int y) {
+    return (orientation << 16) | ((y + yOffset) << 8) | (x + xOffset);
+  }
+
+  private static int position(int orientation, int x, int y) {
+    return (orientation * yRange + y + yOffset) * xRange + x + xOffset;
+  }
+
+  private static int decodeOrientation(int pos) {
+    return pos / (xRange * yRange);
+  }
+
+  private static int decodeX(int pos) {
+    return pos % xRange - xOffset;
+  }
+
+  private static int decodeY(int pos) {
+    return (pos / xRange) % yRange - yOffset;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Scores a board as a weighted sum of its features.
+ * The weights are signed, so features that make a board worse (height, holes...) get negative weights.
+ */
+public class LinearEvaluator implements Evaluator {
+
+  //The weights the AI always used. The features added later are off.
+  private static final double[] defaultWeights = {-0.510066, 0.760666, -0.35663, -0.184483, 0, 0, 0, 0, 0};
+
+  private final double[] weights;
+
+  public LinearEvaluator() {
+    this(defaultWeights);
+  }
+
+  public LinearEvaluator(double[] weights) {
+    this.weights = new double[BoardFeatures.COUNT];
+    System.arraycopy(weights, 0, this.weights, 0, BoardFeatures.COUNT);
+  }
+
+  //Reads one weight per feature from a section of an ini file, named after BoardFeatures.NAMES
+  public static LinearEvaluator load(IniFile config, String section) {
+    double[] weights = new double[BoardFeatures.COUNT];
+    for (int i = 0; i < BoardFeatures.COUNT; i++) {
+      weights[i] = config.getDouble(section, BoardFeatures.NAMES[i], defaultWeights[i]);
+    }
+    return new LinearEvaluator(weights);
+  }
+
+  @Override
+  public void evaluate(float[] features, int count, double[] scores, int offset) {
+    for (int b = 0; b < count; b++) {
+      int start = b * BoardFeatures.COUNT;
+      double score = 0;
+      for (int i = 0; i < BoardFeatures.COUNT; i++) {
+        score += weights[i] * features[start + i];
+      }
+      scores[offset + b] = score;
+    }
+  }
+
+  // Getters
+  public double getWeight(int feature) {
+    return this.weights[feature];
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Finds every placement the active piece of a SearchState can reach.
+ *
+ * The generator does a breadth first search over (x, y, orientation) states using the same
+ * moves a player has (left, right, down and the rotation buttons), so placements that need a
+ * tuck or a slide under an overhang are found too. Every distinct final placement (a state where
+ * the piece can not move down) is returned once. All buffers are allocated up front and reused.
+ */
+public class MoveGenerator {
+
+  //State encoding: ((orientation * yRange) + y + yOffset) * xRange + x + xOffset
+  private static final int xOffset = 4;
+  private static final int xRange = 16;
+  private static final int yOffset = 2;
+  private static final int yRange = GameEngine.HEIGHT + yOffset;
+  public static final int MAX_STATES = PieceShape.ORIENTATIONS * yRange * xRange;
+
+  //Moves a piece can make, as InputType indices
+  private static final InputType[] moves = {InputType.B, InputType.A, InputType.LEFT, InputType.RIGHT, InputType.DOWN};
+
+  private final int[] visited;  //Holds the search number a state was last seen in, so nothing needs clearing between searches
+  private final int[] parent;
+  private final InputType[] parentMove;
+  private final int[] queue;
+  private final int[] placements;
+
+  private int search;
+  private int placementCount;
+
+  public MoveGenerator() {
+    this.visited = new int[MAX_STATES];
+    this.parent = new int[MAX_STATES];
+    this.parentMove = new InputType[MAX_STATES];
+    this.queue = new int[MAX_STATES];
+    this.placements = new int[MAX_STATES];
+
+    this.search = 0;
+    this.placementCount = 0;
+  }
+
+  //Returns the number of placements found
+  public int generate(SearchState state) {
+    Board board = state.getBoard();
+    int type = state.getType();
+    int rotations = PieceShape.rotations(type);
+
+    search++;
+    placementCount = 0;
+
+    int start = encode(state.getOrientation(), state.getX(), state.getY());
+    if (board.collides(type, state.getOrientation(), state.getX(), state.getY()))
+      return 0;
+
+    int head = 0;
+    int tail = 0;
+    visited[start] = search;
+    parent[start] = -1;
+    queue[tail++] = start;
+
+    while (head < tail) {
+      int s = queue[head++];
+      int orientation = decodeOrientation(s);
+      int x = decodeX(s);
+      int y = decodeY(s);
+
+      //Rotations and sideways moves are tried before moving down, so paths do them as early as possible
+      for (int m = 0; m < moves.length; m++) {
+        int nextOrientation = orientation;
+        int nextX = x;
+        int nextY = y;
+
+        switch(moves[m]) {
+        case B:
+          if (rotations == 1)
+            continue;
+          nextOrientation = PieceShape.nextOrientation(type, orientation, true);
+          break;
+        case A:
+          //I, S and Z toggle, so their counter-clockwise rotation is the same state as the clockwise one
+          if (rotations != 4)
+            continue;
+          nextOrientation = PieceShape.nextOrientation(type, orientation, false);
+          break;
+        case LEFT:
+          nextX--;
+          break;
+        case RIGHT:
+          nextX++;
+          break;
+        default:
+          nextY++;
+          break;
+        }
+
+        if (board.collides(type, nextOrientation, nextX, nextY)) {
+          if (moves[m] == InputType.DOWN)
+            placements[placementCount++] = s;
+          continue;
+        }
+
+        int next = encode(nextOrientation, nextX, nextY);
+        if (visited[next] != search) {
+          visited[next] = search;
+          parent[next] = s;
+          parentMove[next] = moves[m];
+          queue[tail++] = next;
+        }
+      }
+    }
+
+    return placementCount;
+  }
+
+  /*
+   * Writes the moves that lead to a placement, leaving out the moves down since gravity and soft
+   * dropping take care of those. rows[i] is the row the piece has to be on when moves[i] is made.
+   * Returns the number of moves written.
+   */
+  public int getPath(int placement, InputType[] pathMoves, int[] rows) {
+    int count = 0;
+    for (int s = placements[placement]; parent[s] != -1; s = parent[s]) {
+      if (parentMove[s] != InputType.DOWN)
+        count++;
+    }
+
+    int i = count;
+    for (int s = placements[placement]; parent[s] != -1; s = parent[s]) {
+      if (parentMove[s] != InputType.DOWN) {
+        i--;
+        pathMoves[i] = parentMove[s];
+        rows[i] = decodeY(parent[s]);
+      }
+    }
+
+    return count;
+  }
+
+  private static int encode(int orientation, int x, int y) {
+    return (orientation * yRange + y + yOffset) * xRange + x + xOffset;
+  }
+
+  private static int decodeOrientation(int s) {
+    return s / (xRange * yRange);
+  }
+
+  private static int decodeX(int s) {
+    return s % xRange - xOffset;
+  }
+
+  private static int decodeY(int s) {
+    return (s / xRange) % yRange - yOffset;
+  }
+
+  // Getters
+  public int getPlacementCount() {
+    return this.placementCount;
+  }
+
+  public int getPlacementX(int placement) {
+    return decodeX(placements[placement]);
+  }
+
+  public int getPlacementY(int placement) {
+    return decodeY(placements[placement]);
+  }
+
+  public int getPlacementOrientation(int placement) {
+    return decodeOrientation(placements[placement]);
+  }
+}
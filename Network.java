@@ -0,0 +1,231 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+ * A feed forward neural network with sigmoid neurons, brought back from the network in
+ * docs/TetrisArcadeWithComments.java so it can score boards for the AI.
+ *
+ * The weights of every layer are kept in one flat float array: the weights into layer l start at
+ * weightOffsets[l], one row of layerSizes[l - 1] weights per neuron. Biases are flat the same way.
+ * feedForward runs a whole batch of inputs in one call through scratch arrays made up front, so
+ * it does not allocate. The scratch makes a network single threaded; networks made with the copy
+ * constructor share the weights and get their own scratch.
+ *
+ * Weight file format (big endian): int layer count, int size of every layer, then for every layer
+ * after the input layer its biases followed by its weights, as floats.
+ */
+public class Network {
+
+  //Largest network a weight file may hold, so a bad header does not allocate gigabytes
+  public static final int MAX_LAYERS = 16;
+  public static final int MAX_LAYER_SIZE = 4096;
+
+  private final int[] layerSizes;
+  private final int[] weightOffsets;
+  private final int[] biasOffsets;
+  private final float[] weights;
+  private final float[] biases;
+
+  //Scratch
+  private final int maxBatch;
+  private final float[][] outputs;  //Outputs of every layer for the batch, outputs[l][sample * layerSizes[l] + neuron]
+  private final float[][] errorSignals;  //Used by train, for one sample
+
+  public Network(int maxBatch, int... layerSizes) {
+    this.layerSizes = layerSizes.clone();
+    this.weightOffsets = new int[layerSizes.length + 1];
+    this.biasOffsets = new int[layerSizes.length + 1];
+    for (int l = 1; l < layerSizes.length; l++) {
+      this.weightOffsets[l + 1] = this.weightOffsets[l] + layerSizes[l] * layerSizes[l - 1];
+      this.biasOffsets[l + 1] = this.biasOffsets[l] + layerSizes[l];
+    }
+    this.weights = new float[this.weightOffsets[layerSizes.length]];
+    this.biases = new float[this.biasOffsets[layerSizes.length]];
+
+    this.maxBatch = maxBatch;
+    this.outputs = new float[layerSizes.length][];
+    this.errorSignals = new float[layerSizes.length][];
+    for (int l = 0; l < layerSizes.length; l++) {
+      this.outputs[l] = new float[layerSizes[l] * maxBatch];
+      this.errorSignals[l] = new float[layerSizes[l]];
+    }
+  }
+
+  //Shares the weights of other, with its own scratch
+  public Network(Network other) {
+    this.layerSizes = other.layerSizes;
+    this.weightOffsets = other.weightOffsets;
+    this.biasOffsets = other.biasOffsets;
+    this.weights = other.weights;
+    this.biases = other.biases;
+
+    this.maxBatch = other.maxBatch;
+    this.outputs = new float[layerSizes.length][];
+    this.errorSignals = new float[layerSizes.length][];
+    for (int l = 0; l < layerSizes.length; l++) {
+      this.outputs[l] = new float[layerSizes[l] * maxBatch];
+      this.errorSignals[l] = new float[layerSizes[l]];
+    }
+  }
+
+  //Same ranges as the original network: biases in [0.3, 0.7), weights in [-0.5, 0.5)
+  public void randomize(Random random) {
+    for (int i = 0; i < biases.length; i++) {
+      biases[i] = 0.3f + 0.4f * random.nextFloat();
+    }
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = random.nextFloat() - 0.5f;
+    }
+  }
+
+  /*
+   * Runs count inputs through the network. Input i starts at inputs[i * getInputSize()] and
+   * output i is written from results[i * getOutputSize()]. Returns false if the batch is too big.
+   */
+  public boolean feedForward(float[] inputs, int count, float[] results) {
+    if (count > maxBatch) {
+      System.out.println("Feed Forward Failed -> Batch of " + count + " is bigger than " + maxBatch);
+      return false;
+    }
+
+    int last = layerSizes.length - 1;
+    System.arraycopy(inputs, 0, outputs[0], 0, count * layerSizes[0]);
+
+    for (int l = 1; l <= last; l++) {
+      int size = layerSizes[l];
+      int prevSize = layerSizes[l - 1];
+      float[] in = outputs[l - 1];
+      float[] out = outputs[l];
+
+      for (int s = 0; s < count; s++) {
+        int inStart = s * prevSize;
+        for (int n = 0; n < size; n++) {
+          int w = weightOffsets[l] + n * prevSize;
+          float sum = biases[biasOffsets[l] + n];
+          for (int p = 0; p < prevSize; p++) {
+            sum += in[inStart + p] * weights[w + p];
+          }
+          out[s * size + n] = sigmoid(sum);
+        }
+      }
+    }
+
+    System.arraycopy(outputs[last], 0, results, 0, count * layerSizes[last]);
+    return true;
+  }
+
+  //One step of gradient descent on the squared error of a single sample, like the original train
+  public void train(float[] input, float[] targets, float eta) {
+    if (!feedForward(input, 1, outputs[layerSizes.length - 1]))
+      return;
+
+    int last = layerSizes.length - 1;
+    for (int n = 0; n < layerSizes[last]; n++) {
+      float out = outputs[last][n];
+      errorSignals[last][n] = (out - targets[n]) * out * (1 - out);
+    }
+
+    for (int l = last - 1; l > 0; l--) {
+      for (int n = 0; n < layerSizes[l]; n++) {
+        float sum = 0;
+        for (int next = 0; next < layerSizes[l + 1]; next++) {
+          sum += weights[weightOffsets[l + 1] + next * layerSizes[l] + n] * errorSignals[l + 1][next];
+        }
+        float out = outputs[l][n];
+        errorSignals[l][n] = sum * out * (1 - out);
+      }
+    }
+
+    for (int l = 1; l <= last; l++) {
+      int prevSize = layerSizes[l - 1];
+      for (int n = 0; n < layerSizes[l]; n++) {
+        float delta = -eta * errorSignals[l][n];
+        biases[biasOffsets[l] + n] += delta;
+
+        int w = weightOffsets[l] + n * prevSize;
+        for (int p = 0; p < prevSize; p++) {
+          weights[w + p] += delta * outputs[l - 1][p];
+        }
+      }
+    }
+  }
+
+  private static float sigmoid(float x) {
+    return (float) (1 / (1 + Math.exp(-x)));
+  }
+
+  //Reads a network from a weight file, see the format above. The header is checked against the file length before anything is allocated.
+  public static Network load(String path, int maxBatch) throws IOException {
+    long length = new File(path).length();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+    try {
+      int layers = in.readInt();
+      if (layers < 2 || layers > MAX_LAYERS)
+        throw new IOException(layers + " layers, a network has 2 to " + MAX_LAYERS);
+      int[] sizes = new int[layers];
+      long floats = 0;
+      for (int l = 0; l < layers; l++) {
+        sizes[l] = in.readInt();
+        if (sizes[l] < 1 || sizes[l] > MAX_LAYER_SIZE)
+          throw new IOException("Layer " + l + " has " + sizes[l] + " neurons, a layer has 1 to " + MAX_LAYER_SIZE);
+        if (l > 0)
+          floats += sizes[l] + (long) sizes[l] * sizes[l - 1];
+      }
+      if (length != 4 + 4L * layers + 4 * floats)
+        throw new IOException("The file is " + length + " bytes, the layers need " + (4 + 4L * layers + 4 * floats));
+
+      Network network = new Network(maxBatch, sizes);
+      for (int l = 1; l < layers; l++) {
+        for (int i = network.biasOffsets[l]; i < network.biasOffsets[l + 1]; i++) {
+          network.biases[i] = in.readFloat();
+        }
+        for (int i = network.weightOffsets[l]; i < network.weightOffsets[l + 1]; i++) {
+          network.weights[i] = in.readFloat();
+        }
+      }
+      return network;
+    } finally {
+      in.close();
+    }
+  }
+
+  public void save(String path) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+    try {
+      out.writeInt(layerSizes.length);
+      for (int size : layerSizes) {
+        out.writeInt(size);
+      }
+      for (int l = 1; l < layerSizes.length; l++) {
+        for (int i = biasOffsets[l]; i < biasOffsets[l + 1]; i++) {
+          out.writeFloat(biases[i]);
+        }
+        for (int i = weightOffsets[l]; i < weightOffsets[l + 1]; i++) {
+          out.writeFloat(weights[i]);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  // Getters
+  public int getInputSize() {
+    return this.layerSizes[0];
+  }
+
+  public int getOutputSize() {
+    return this.layerSizes[this.layerSizes.length - 1];
+  }
+
+  public int getMaxBatch() {
+    return this.maxBatch;
+  }
+}
@@ -0,0 +1,56 @@
+import java.io.IOException;
+
+/*
+ * Scores boards with a Network that takes the board features and gives one output.
+ * The network's scratch can only be used by one thread, so every thread that evaluates gets its
+ * own copy of the network sharing the same weights.
+ */
+public class NetworkEvaluator implements Evaluator {
+
+  private final Network network;
+  private final ThreadLocal<Scratch> scratch;
+
+  public NetworkEvaluator(Network network) {
+    this.network = network;
+    this.scratch = ThreadLocal.withInitial(Scratch::new);
+  }
+
+  //Loads the weights from a file written by Network.save. Returns null if the file can not be used.
+  public static NetworkEvaluator load(String path) {
+    try {
+      Network network = Network.load(path, MoveGenerator.MAX_STATES);
+      if (network.getInputSize() != BoardFeatures.COUNT || network.getOutputSize() != 1) {
+        System.out.println("Network in " + path + " needs " + BoardFeatures.COUNT + " inputs and 1 output");
+        return null;
+      }
+      return new NetworkEvaluator(network);
+    } catch (IOException e) {
+      System.out.println("Could not load network " + path + ": " + e.getMessage());
+      return null;
+    } catch (RuntimeException e) {
+      System.out.println("Could not load network " + path + ": " + e);
+      return null;
+    }
+  }
+
+  @Override
+  public void evaluate(float[] features, int count, double[] scores, int offset) {
+    Scratch s = scratch.get();
+    if (!s.network.feedForward(features, count, s.results))
+      return;
+
+    for (int b = 0; b < count; b++) {
+      scores[offset + b] = s.results[b];
+    }
+  }
+
+  private class Scratch {
+    private final Network network;
+    private final float[] results;
+
+    public Scratch() {
+      this.network = new Network(NetworkEvaluator.this.network);
+      this.results = new float[this.network.getMaxBatch()];
+    }
+  }
+}
@@ -3,7 +3,6 @@ import java.util.Random;
 class Piece implements IDisplay {
 
   private Block[] blocks;
-  private float[][] relPos;  //Relative positions of blocks
   private float x;
   private float y;
   private PieceType type;
@@ -16,7 +15,6 @@ class Piece implements IDisplay {
 
   public Piece() {
 
-    this.relPos = new float[blocks.length][2];
     this.x = 5;
     this.y = 0;
     this.type = PieceType.I;
@@ -45,42 +43,11 @@ class Piece implements IDisplay {
   }
 
   private Block[] generateBlocks() {
-    Block[] temp = new Block[4];
-    switch(this.type) {
-    case I:
-      this.relPos = new float[][]{{-2, 0}, {-1, 0}, {0, 0}, {1, 0}};
-
-      break;
-    case O:
-      this.relPos = new float[][]{{-0.5, -0.5}, {0.5, -0.5}, {0.5, 0.5}, {-0.5, 0.5}};
-
-      break;
-    case L:
-      this.relPos = new float[][]{{-1, 0}, {0, 0}, {1, 0}, {-1, 1}};
-
-      break;
-    case J:
-      this.relPos = new float[][]{{-1, 0}, {0, 0}, {1, 0}, {1, 1}};
-
-      break;
-    case S:
-      this.relPos = new float[][]{{0.5, -0.5}, {-0.5, -0.5}, {-0.5, 0.5}, {-1.5, 0.5}};    
-
-      break;
-    case Z:
-      this.relPos = new float[][]{{-1.5, -0.5}, {-0.5, -0.5}, {-0.5, 0.5}, {0.5, 0.5}};  
-
-      break;
-    case T:
-      this.relPos = new float[][]{{-1, 0}, {0, 0}, {1, 0}, {0, 1}};
-
-      break;
-    default:
-      println("invalid type of block");
-    }
+    Block[] temp = new Block[PieceShape.BLOCKS];
+    int t = this.type.getIndex();
 
     for (int i = 0; i < temp.length; i++) {
-      temp[i] = new Block(Math.round(this.x + this.relPos[i][0]), Math.round(this.y + this.relPos[i][1]), this.size, this.pieceColor, this.type);
+      temp[i] = new Block(getBlockX(t, i), getBlockY(t, i), this.size, this.pieceColor, this.type);
     }
 
     return temp;
@@ -88,33 +55,18 @@ class Piece implements IDisplay {
 
   public void updateBlocks() {
     //Updating each block's position relative to the piece's position
+    int t = this.type.getIndex();
+
     for (int i = 0; i < this.blocks.length; i++) {
-      //Using round to convert from float to int
-      this.blocks[i].setPos(Math.round(this.x + this.relPos[i][0]), Math.round(this.y + this.relPos[i][1]));
+      this.blocks[i].setPos(getBlockX(t, i), getBlockY(t, i));
       this.blocks[i].setColor(this.pieceColor);
     }
   }
 
 
   public void rotate(boolean cw) {
-    //rewrite
-
-    for (int i = 0; i < this.relPos.length; i++) {
-      //swapping the coordinates
-      float temp = this.relPos[i][0];
-      this.relPos[i][0] = this.relPos[i][1];
-      this.relPos[i][1] = temp;
-
-      if (cw)
-        this.relPos[i][0] = -this.relPos[i][0];
-      else
-        this.relPos[i][1] = -this.relPos[i][1];
-    }
-
-    if (cw)
-      this.orientation = (this.orientation + 1) % 4;
-    else
-      this.orientation = (this.orientation + 3) % 4;
+    //The shape of each orientation is precomputed, so rotating only changes the index
+    this.orientation = PieceShape.rotate(this.orientation, cw);
 
     this.updateBlocks();
   }
@@ -179,12 +131,12 @@ class Piece implements IDisplay {
     this.updateBlocks();
   }
 
-  public float[][] getRelPos() {
-    return relPos;
+  public int getOrientation() {
+    return this.orientation;
   }
 
-  public void setRelPos(float[][] relPos) {
-    this.relPos = relPos;
+  public void setOrientation(int orientation) {
+    this.orientation = orientation;
     this.updateBlocks();
   }
 
@@ -205,6 +157,16 @@ class Piece implements IDisplay {
     return this.y;
   }
 
+  //Grid cell of a block, using round to convert from float to int. Each block is rounded on its own,
+  //so a piece between cells (the next box) is drawn where it was before the shape tables.
+  private int getBlockX(int t, int block) {
+    return Math.round(this.x + PieceShape.offsetX(t, orientation, block));
+  }
+
+  private int getBlockY(int t, int block) {
+    return Math.round(this.y + PieceShape.offsetY(t, orientation, block));
+  }
+
   public void setY(float y) {
     this.y = y;
     this.updateBlocks();
@@ -0,0 +1,70 @@
+import java.nio.ByteBuffer;
+
+/*
+ * The pieces coming up, drawn ahead from a randomizer into a ring buffer so any of the next
+ * getSize() pieces can be looked at without drawing or allocating.
+ */
+public class PieceQueue {
+
+  private final Randomizer randomizer;
+  private final int[] types;
+  private int head;
+
+  public PieceQueue(Randomizer randomizer, int size) {
+    this.randomizer = randomizer;
+    this.types = new int[Math.max(size, 1)];
+    for (int i = 0; i < this.types.length; i++) {
+      this.types[i] = randomizer.next();
+    }
+    this.head = 0;
+  }
+
+  //Removes the first piece and returns its type, drawing a new one for the end
+  public int take() {
+    int type = types[head];
+    types[head] = randomizer.next();
+    head = (head + 1) % types.length;
+    return type;
+  }
+
+  //Type of the piece i places from the front, 0 is the piece take returns next
+  public int peek(int i) {
+    return types[(head + i) % types.length];
+  }
+
+  //Saves and restores the pieces drawn ahead and the randomizer's state
+  public void writeState(ByteBuffer buffer) {
+    buffer.put((byte) head);
+    for (int i = 0; i < types.length; i++) {
+      buffer.put((byte) types[i]);
+    }
+    randomizer.writeState(buffer);
+  }
+
+  //Returns true if readState could restore the state at the buffer's position, reading past it
+  public boolean checkState(ByteBuffer buffer) {
+    if (buffer.remaining() < 1 + types.length)
+      return false;
+    int head = buffer.get();
+    if (head < 0 || head >= types.length)
+      return false;
+    for (int i = 0; i < types.length; i++) {
+      int type = buffer.get();
+      if (type < 0 || type >= PieceShape.TYPES)
+        return false;
+    }
+    return randomizer.checkState(buffer);
+  }
+
+  public void readState(ByteBuffer buffer) {
+    head = buffer.get();
+    for (int i = 0; i < types.length; i++) {
+      types[i] = buffer.get();
+    }
+    randomizer.readState(buffer);
+  }
+
+  public int getSize() {
+    return types.length;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Precomputed shapes for every orientation of every piece type.
+ *
+ * Tables are indexed by [PieceType index][orientation], where orientation is the number of
+ * clockwise turns from the spawn position (the same value Piece.orientation holds).
+ * Each entry holds the integer cell offsets of the 4 blocks relative to the piece position,
+ * and a 4x4 bitmask of those cells where bit (row*4 + col) is relative to (minX, minY).
+ * Rotating a piece only changes the orientation index.
+ */
+public final class PieceShape {
+
+  public static final int TYPES = 7;
+  public static final int ORIENTATIONS = 4;
+  public static final int BLOCKS = 4;
+
+  //Spawn positions, in the same order as the PieceType indices (I, O, L, J, S, Z, T)
+  private static final float[][][] SPAWN_POS = {
+    {{-2, 0}, {-1, 0}, {0, 0}, {1, 0}},
+    {{-0.5f, -0.5f}, {0.5f, -0.5f}, {0.5f, 0.5f}, {-0.5f, 0.5f}},
+    {{-1, 0}, {0, 0}, {1, 0}, {-1, 1}},
+    {{-1, 0}, {0, 0}, {1, 0}, {1, 1}},
+    {{0.5f, -0.5f}, {-0.5f, -0.5f}, {-0.5f, 0.5f}, {-1.5f, 0.5f}},
+    {{-1.5f, -0.5f}, {-0.5f, -0.5f}, {-0.5f, 0.5f}, {0.5f, 0.5f}},
+    {{-1, 0}, {0, 0}, {1, 0}, {0, 1}}
+  };
+
+  private static final float[][][] offsetX = new float[TYPES][ORIENTATIONS][BLOCKS];
+  private static final float[][][] offsetY = new float[TYPES][ORIENTATIONS][BLOCKS];
+  private static final int[][][] dx = new int[TYPES][ORIENTATIONS][BLOCKS];
+  private static final int[][][] dy = new int[TYPES][ORIENTATIONS][BLOCKS];
+  private static final int[][] mask = new int[TYPES][ORIENTATIONS];
+  private static final int[][] minX = new int[TYPES][ORIENTATIONS];
+  private static final int[][] maxX = new int[TYPES][ORIENTATIONS];
+  private static final int[][] minY = new int[TYPES][ORIENTATIONS];
+  private static final int[][] maxY = new int[TYPES][ORIENTATIONS];
+
+  //Orientations reachable in game, in the same order as the PieceType indices
+  private static final int[] rotations = {2, 1, 4, 4, 2, 2, 4};
+
+  static {
+    for (int t = 0; t < TYPES; t++) {
+      float[][] relPos = new float[BLOCKS][2];
+      for (int i = 0; i < BLOCKS; i++) {
+        relPos[i][0] = SPAWN_POS[t][i][0];
+        relPos[i][1] = SPAWN_POS[t][i][1];
+      }
+
+      for (int r = 0; r < ORIENTATIONS; r++) {
+        //Rounding the half cell offsets of S, Z and O the same way the piece position is rounded
+        minX[t][r] = Integer.MAX_VALUE;
+        maxX[t][r] = Integer.MIN_VALUE;
+        minY[t][r] = Integer.MAX_VALUE;
+        maxY[t][r] = Integer.MIN_VALUE;
+        for (int i = 0; i < BLOCKS; i++) {
+          offsetX[t][r][i] = relPos[i][0];
+          offsetY[t][r][i] = relPos[i][1];
+          dx[t][r][i] = Math.round(relPos[i][0]);
+          dy[t][r][i] = Math.round(relPos[i][1]);
+          minX[t][r] = Math.min(minX[t][r], dx[t][r][i]);
+          maxX[t][r] = Math.max(maxX[t][r], dx[t][r][i]);
+          minY[t][r] = Math.min(minY[t][r], dy[t][r][i]);
+          maxY[t][r] = Math.max(maxY[t][r], dy[t][r][i]);
+        }
+        for (int i = 0; i < BLOCKS; i++) {
+          mask[t][r] |= 1 << ((dy[t][r][i] - minY[t][r]) * 4 + (dx[t][r][i] - minX[t][r]));
+        }
+
+        //Rotating clockwise for the next orientation
+        for (int i = 0; i < BLOCKS; i++) {
+          float temp = relPos[i][0];
+          relPos[i][0] = -relPos[i][1];
+          relPos[i][1] = temp;
+        }
+      }
+    }
+  }
+
+  private PieceShape() {
+  }
+
+  //Offsets before rounding, half cells for S, Z and O
+  public static float offsetX(int type, int orientation, int block) {
+    return offsetX[type][orientation][block];
+  }
+
+  public static float offsetY(int type, int orientation, int block) {
+    return offsetY[type][orientation][block];
+  }
+
+  public static int dx(int type, int orientation, int block) {
+    return dx[type][orientation][block];
+  }
+
+  public static int dy(int type, int orientation, int block) {
+    return dy[type][orientation][block];
+  }
+
+  public static int mask(int type, int orientation) {
+    return mask[type][orientation];
+  }
+
+  //Bits of one row of the mask, bit 0 being column minX
+  public static int rowMask(int type, int orientation, int row) {
+    return (mask[type][orientation] >> (row * 4)) & 0xF;
+  }
+
+  public static int minX(int type, int orientation) {
+    return minX[type][orientation];
+  }
+
+  public static int maxX(int type, int orientation) {
+    return maxX[type][orientation];
+  }
+
+  public static int minY(int type, int orientation) {
+    return minY[type][orientation];
+  }
+
+  public static int maxY(int type, int orientation) {
+    return maxY[type][orientation];
+  }
+
+  public static int rotate(int orientation, boolean cw) {
+    return cw ? (orientation + 1) & 3 : (orientation + 3) & 3;
+  }
+
+  //Orientation after a rotation button press. O does not rotate, and I, S and Z only toggle between their first two orientations.
+  public static int nextOrientation(int type, int orientation, boolean cw) {
+    switch(rotations[type]) {
+    case 1:
+      return orientation;
+    case 2:
+      return rotate(orientation, orientation != 1);
+    default:
+      return rotate(orientation, cw);
+    }
+  }
+
+  //Number of orientations a piece can reach with the rotation buttons
+  public static int rotations(int type) {
+    return rotations[type];
+  }
+}
@@ -0,0 +1,31 @@
+public enum PieceType {
+  I(0),
+  O(1),
+  L(2),
+  J(3),
+  S(4),
+  Z(5),
+  T(6);
+  
+   private int pieceIndex;
+
+   //By index, values() copies the array on every call
+   private static final PieceType[] types = new PieceType[values().length];
+   static {
+      for (PieceType l : values()) {
+          types[l.pieceIndex] = l;
+      }
+   }
+
+   private PieceType(int index) { this.pieceIndex = index; }
+
+   public static PieceType get(int index) {
+      if (index < 0 || index >= types.length)
+          throw new IllegalArgumentException("Piece not found");
+      return types[index];
+   }
+   
+   public int getIndex() {
+     return pieceIndex;
+   }
+}
@@ -0,0 +1,324 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/*
+ * Placements the AI chose before, by the shape of the board, so attract mode games that come back
+ * to a board shape it has seen skip the search.
+ *
+ * A key is made of the skyline (the height of every column above the lowest column, 4 bits each
+ * and capped at 15), the columns that have a hole under their top, the current piece and the next
+ * piece. Many boards share a key, so a placement is stored relative to the top of the lowest
+ * column and the AI only takes it if the piece can still reach it.
+ *
+ * The cache holds at most capacity entries and drops the least recently used one when full. The
+ * entries are arrays linked into hash chains and into a recency list, so lookups do not allocate.
+ * The methods are synchronized: the planner thread searches while the saver thread saves.
+ *
+ * File format (big endian): int entry count, then for every entry from the least to the most
+ * recently used its long key and int placement.
+ */
+public class PlacementCache {
+
+  //Returned by get when the key is not in the cache
+  public static final int NONE = -1;
+
+  private static final int NO_NEXT = 7;  //Next piece field of the key when the next piece is not known
+
+  private final int capacity;
+  private final long[] keys;
+  private final int[] values;
+  private final int[] chain;  //Next entry in the same bucket
+  private final int[] newer;  //Recency list, -1 at the ends
+  private final int[] older;
+  private final int[] buckets;  //First entry of every bucket, -1 when empty
+  private int size;
+  private int newest;
+  private int oldest;
+
+  private long hits;
+  private long misses;
+
+  public PlacementCache(int capacity) {
+    this.capacity = Math.max(capacity, 1);
+    this.keys = new long[this.capacity];
+    this.values = new int[this.capacity];
+    this.chain = new int[this.capacity];
+    this.newer = new int[this.capacity];
+    this.older = new int[this.capacity];
+    this.buckets = new int[Integer.highestOneBit(this.capacity) * 4];
+    for (int i = 0; i < this.buckets.length; i++) {
+      this.buckets[i] = -1;
+    }
+    this.size = 0;
+    this.newest = -1;
+    this.oldest = -1;
+
+    this.hits = 0;
+    this.misses = 0;
+  }
+
+  //The key of a board with the current piece type and the next piece type (-1 when not known)
+  public static long key(Board board, int type, int next) {
+    int base = lowestTop(board);
+    long skyline = 0;
+    int holes = 0;
+    int seen = 0;
+    for (int y = 0; y < base; y++) {
+      int row = board.getRow(y);
+      holes |= seen & ~row;
+
+      //Columns whose top is in this row
+      int tops = row & ~seen;
+      while (tops != 0) {
+        int x = Integer.numberOfTrailingZeros(tops);
+        skyline |= (long) Math.min(base - y, 15) << (4 * x);
+        tops &= tops - 1;
+      }
+      seen |= row;
+    }
+    //Holes under the top of the lowest column
+    for (int y = base; y < board.getHeight(); y++) {
+      holes |= ~board.getRow(y) & board.getFullRow();
+    }
+
+    return skyline | (long) holes << 40 | (long) type << 50 | (long) (next >= 0 ? next : NO_NEXT) << 53;
+  }
+
+  //Packs a placement of a piece on board relative to the top of the lowest column
+  public static int encode(Board board, int orientation, int x, int y) {
+    return (orientation << 16) | ((x + 4) << 8) | (y - lowestTop(board) + 128);
+  }
+
+  public static int getOrientation(int placement) {
+    return placement >> 16;
+  }
+
+  public static int getX(int placement) {
+    return ((placement >> 8) & 0xFF) - 4;
+  }
+
+  public static int getY(Board board, int placement) {
+    return (placement & 0xFF) - 128 + lowestTop(board);
+  }
+
+  //The row above the top of the lowest column, the height of the board if a column is empty
+  private static int lowestTop(Board board) {
+    int seen = 0;
+    for (int y = 0; y < board.getHeight(); y++) {
+      seen |= board.getRow(y);
+      if (seen == board.getFullRow())
+        return y;
+    }
+    return board.getHeight();
+  }
+
+  //Returns the placement stored for key, or NONE
+  public synchronized int get(long key) {
+    int entry = find(key);
+    if (entry < 0) {
+      misses++;
+      return NONE;
+    }
+
+    hits++;
+    unlink(entry);
+    linkNewest(entry);
+    return values[entry];
+  }
+
+  //Drops a placement returned by get that could not be used, and counts that lookup as a miss
+  public synchronized void reject(long key) {
+    int entry = find(key);
+    if (entry < 0)
+      return;
+
+    hits--;
+    misses++;
+    unlink(entry);
+    removeFromBucket(entry);
+
+    //Keeps the entries packed at the front of the arrays
+    size--;
+    if (entry != size)
+      move(size, entry);
+  }
+
+  public synchronized void put(long key, int placement) {
+    int entry = find(key);
+    if (entry >= 0) {
+      unlink(entry);
+    } else {
+      if (size < capacity) {
+        entry = size++;
+      } else {
+        entry = oldest;
+        unlink(entry);
+        removeFromBucket(entry);
+      }
+      keys[entry] = key;
+      int bucket = bucket(key);
+      chain[entry] = buckets[bucket];
+      buckets[bucket] = entry;
+    }
+
+    values[entry] = placement;
+    linkNewest(entry);
+  }
+
+  private int find(long key) {
+    for (int entry = buckets[bucket(key)]; entry >= 0; entry = chain[entry]) {
+      if (keys[entry] == key)
+        return entry;
+    }
+    return -1;
+  }
+
+  private int bucket(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32) & (buckets.length - 1);
+  }
+
+  private void removeFromBucket(int entry) {
+    int bucket = bucket(keys[entry]);
+    if (buckets[bucket] == entry) {
+      buckets[bucket] = chain[entry];
+      return;
+    }
+    int e = buckets[bucket];
+    while (chain[e] != entry) {
+      e = chain[e];
+    }
+    chain[e] = chain[entry];
+  }
+
+  //Moves the last entry into a free slot, fixing the links that point at it
+  private void move(int from, int to) {
+    keys[to] = keys[from];
+    values[to] = values[from];
+    chain[to] = chain[from];
+    newer[to] = newer[from];
+    older[to] = older[from];
+
+    int bucket = bucket(keys[from]);
+    if (buckets[bucket] == from) {
+      buckets[bucket] = to;
+    } else {
+      int e = buckets[bucket];
+      while (chain[e] != from) {
+        e = chain[e];
+      }
+      chain[e] = to;
+    }
+
+    if (newer[to] >= 0)
+      older[newer[to]] = to;
+    else
+      newest = to;
+    if (older[to] >= 0)
+      newer[older[to]] = to;
+    else
+      oldest = to;
+  }
+
+  private void unlink(int entry) {
+    if (newer[entry] >= 0)
+      older[newer[entry]] = older[entry];
+    else
+      newest = older[entry];
+    if (older[entry] >= 0)
+      newer[older[entry]] = newer[entry];
+    else
+      oldest = newer[entry];
+  }
+
+  private void linkNewest(int entry) {
+    newer[entry] = -1;
+    older[entry] = newest;
+    if (newest >= 0)
+      newer[newest] = entry;
+    else
+      oldest = entry;
+    newest = entry;
+  }
+
+  //Reads a cache saved by save. Entries past capacity are dropped, the oldest first.
+  public static PlacementCache load(String path, int capacity) throws IOException {
+    PlacementCache cache = new PlacementCache(capacity);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+    try {
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        long key = in.readLong();
+        cache.put(key, in.readInt());
+      }
+    } finally {
+      in.close();
+    }
+    return cache;
+  }
+
+  /*
+   * Written to a new file that replaces the old one, so a power cut never leaves half a cache. The
+   * entries are copied out first, so the planner does not wait for the disk.
+   */
+  public void save(String path) throws IOException {
+    long[] savedKeys;
+    int[] savedValues;
+    synchronized (this) {
+      savedKeys = new long[size];
+      savedValues = new int[size];
+      int i = 0;
+      for (int entry = oldest; entry >= 0; entry = newer[entry]) {
+        savedKeys[i] = keys[entry];
+        savedValues[i] = values[entry];
+        i++;
+      }
+    }
+
+    Path target = new File(path).toPath();
+    Path temp = new File(path + ".tmp").toPath();
+    FileOutputStream file = new FileOutputStream(temp.toFile());
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+    try {
+      out.writeInt(savedKeys.length);
+      for (int i = 0; i < savedKeys.length; i++) {
+        out.writeLong(savedKeys[i]);
+        out.writeInt(savedValues[i]);
+      }
+      out.flush();
+      //On the disk before the rename is, or a power cut could leave an empty file in its place
+      file.getChannel().force(true);
+    } finally {
+      out.close();
+    }
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // Getters
+  public synchronized int getSize() {
+    return this.size;
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  //Share of the lookups that found a placement the AI used
+  public synchronized double getHitRate() {
+    long lookups = this.hits + this.misses;
+    return lookups == 0 ? 0 : (double) this.hits / lookups;
+  }
+}
@@ -0,0 +1,31 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Chooses the type of every piece of a game. An implementation is made from a seed and draws
+ * from one generator it keeps for the whole game, so the same seed always deals the same pieces
+ * and drawing does not allocate.
+ */
+public interface Randomizer {
+
+  //Names used in config.ini
+  String UNIFORM = "uniform";
+  String BAG = "bag";
+
+  //Type index of the next piece, from 0 to PieceShape.TYPES - 1
+  int next();
+
+  //Saves and restores everything next() depends on, see GameEngine.writeState
+  void writeState(ByteBuffer buffer);
+
+  void readState(ByteBuffer buffer);
+
+  //Returns true if readState could restore the state at the buffer's position, reading past it
+  boolean checkState(ByteBuffer buffer);
+
+  //Returns a uniform randomizer for a name that is not a randomizer
+  static Randomizer create(String name, long seed) {
+    if (BAG.equals(name))
+      return new BagRandomizer(seed);
+    return new UniformRandomizer(seed);
+  }
+}
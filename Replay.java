@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * A recorded game: what is needed to deal the same pieces, then one byte for every frame.
+ *
+ * Bits 0 to 5 of a frame are the buttons that triggered in it (bit i is InputType index i). The
+ * game also depends on two things the buttons do not decide, so they take the other two bits:
+ * whether intense mode was on (the music switches it) and whether the game updated (it does not
+ * during the start delay, or in the frame UP paused it). In the frame UP paused the game, the
+ * buttons after it (DOWN, A and B) went to the pause menu, so they are not recorded, and neither
+ * are the buttons of the frame B closed the menu in. Replays made before that may have them, see
+ * getGameTriggers.
+ *
+ * File format (big endian): int MAGIC, short VERSION, long seed, randomizer name, byte start
+ * level, byte 1 if the game started in intense mode, player name, then the frames to the end of
+ * the file. Names are a short length followed by UTF-8 bytes.
+ *
+ * The frames are kept in the buffer they were read from, so the replays of a mapped archive are
+ * not copied off the file (see ReplayArchive).
+ */
+public class Replay {
+
+  public static final int MAGIC = 0x42465250;  //"BFRP"
+  public static final short VERSION = 1;
+
+  public static final int TRIGGERS = 0x3F;
+  public static final int INTENSE = 1 << 6;
+  public static final int UPDATED = 1 << 7;
+  private static final int UP = 1 << InputType.UP.getIndex();
+
+  private long seed;
+  private String randomizer;
+  private int startLevel;
+  private boolean intense;
+  private String name;
+  private ByteBuffer frames;
+  private int frameCount;
+
+  public Replay(long seed, String randomizer, int startLevel, boolean intense, String name) {
+    this.seed = seed;
+    this.randomizer = randomizer;
+    this.startLevel = startLevel;
+    this.intense = intense;
+    this.name = name;
+    this.frames = ByteBuffer.allocate(0);
+    this.frameCount = 0;
+  }
+
+  public static Replay read(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+      }
+      buffer.flip();
+      return read(buffer);
+    } finally {
+      channel.close();
+    }
+  }
+
+  //Reads a header and then takes the frames to the limit of the buffer
+  public static Replay read(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < 6 || buffer.getInt() != MAGIC)
+      throw new IOException("Not a replay");
+    short version = buffer.getShort();
+    if (version != VERSION)
+      throw new IOException("Replay version " + version + " is not supported");
+
+    long seed = buffer.getLong();
+    String randomizer = getName(buffer);
+    int startLevel = buffer.get();
+    boolean intense = buffer.get() != 0;
+    Replay replay = new Replay(seed, randomizer, startLevel, intense, getName(buffer));
+
+    replay.frames = buffer.slice();
+    replay.frameCount = replay.frames.remaining();
+    buffer.position(buffer.limit());
+    return replay;
+  }
+
+  //Writes the header, the frames follow it
+  public void writeHeader(ByteBuffer buffer) {
+    buffer.putInt(MAGIC);
+    buffer.putShort(VERSION);
+    buffer.putLong(seed);
+    putName(buffer, randomizer);
+    buffer.put((byte) startLevel);
+    buffer.put((byte) (intense ? 1 : 0));
+    putName(buffer, name);
+  }
+
+  public void writeFrames(ByteBuffer buffer) {
+    buffer.put(frames.duplicate());
+  }
+
+  //Bytes writeHeader writes
+  public int getHeaderSize() {
+    return 4 + 2 + 8 + 2 + randomizer.getBytes(StandardCharsets.UTF_8).length + 1 + 1 + 2 + name.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static void putName(ByteBuffer buffer, String name) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  private static String getName(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  //Buttons of a frame the game ran. When UP paused the game, the ones after it went to the pause menu.
+  public static int getGameTriggers(int frame) {
+    int triggers = frame & TRIGGERS;
+    if ((triggers & UP) != 0)
+      triggers &= (UP << 1) - 1;
+    return triggers;
+  }
+
+  //Buttons to record for a frame. If the pause menu was open when the frame started, every button
+  //went to it (B closing it included), so the game ran none of them.
+  public static int getRecordedTriggers(int triggers, boolean paused) {
+    return paused ? 0 : getGameTriggers(triggers);
+  }
+
+  //The randomizer that deals this game's pieces
+  public Randomizer createRandomizer() {
+    return Randomizer.create(randomizer, seed);
+  }
+
+  // Getters
+  public long getSeed() {
+    return this.seed;
+  }
+
+  public String getRandomizer() {
+    return this.randomizer;
+  }
+
+  public int getStartLevel() {
+    return this.startLevel;
+  }
+
+  public boolean isIntense() {
+    return this.intense;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public int getFrameCount() {
+    return this.frameCount;
+  }
+
+  public int getFrame(int frame) {
+    return this.frames.get(frame) & 0xFF;
+  }
+}
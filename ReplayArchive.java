@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Many replays in one file, read through a memory map so any game, and any frame of a game, is
+ * reached without reading what comes before it.
+ *
+ * File format (big endian):
+ *   header: int MAGIC, short VERSION, int keyframe interval
+ *   games: a replay as in a .rpl file, then its keyframes
+ *   index: one ENTRY_SIZE entry per game
+ *   trailer: long index offset, int game count, int MAGIC
+ *
+ * Each time games are added, a new index and trailer go after them and the old ones are left
+ * where they were, unused. The archive ends at the last trailer that matches its index, so games
+ * a writer added but never got to index (it was not closed, or the power went out) are ignored.
+ *
+ * A keyframe is the GameEngine state (see GameEngine.writeState) before frame 0 and then before
+ * every keyframe interval frames, up to the last frame. Seeking to a frame restores the keyframe
+ * before it and plays the frames in between, never more than the interval. Index entries have a
+ * fixed size, so the entry of game i is at index offset + i * ENTRY_SIZE. Archives are written by
+ * ReplayArchiveWriter.
+ *
+ * Compile and run from the sketch folder (only the .java tabs are needed):
+ *   javac -d replays *.java
+ *   java -cp replays ReplayArchive data/replays.rpa data/replays/*.rpl
+ *   java -cp replays ReplayArchive data/replays.rpa
+ * The first adds replays to the archive, the second lists its games.
+ */
+public class ReplayArchive {
+
+  public static final int MAGIC = 0x42465241;  //"BFRA"
+  public static final short VERSION = 1;
+  public static final int HEADER_SIZE = 4 + 2 + 4;
+  public static final int TRAILER_SIZE = 8 + 4 + 4;
+  public static final int KEYFRAME_INTERVAL = 600;  //10 seconds of play
+
+  //Index entry: name (UTF-8, cut and padded with zeros), score, lines, start level, offset of the
+  //replay, frame count, offset of the first keyframe, keyframe size
+  public static final int NAME_BYTES = 16;
+  public static final int ENTRY_SIZE = NAME_BYTES + 4 + 4 + 1 + 8 + 4 + 8 + 2;
+  private static final int SCORE = NAME_BYTES;
+  private static final int LINES = SCORE + 4;
+  private static final int START_LEVEL = LINES + 4;
+  private static final int OFFSET = START_LEVEL + 1;
+  private static final int FRAME_COUNT = OFFSET + 8;
+  private static final int KEYFRAMES = FRAME_COUNT + 4;
+  private static final int KEYFRAME_SIZE = KEYFRAMES + 8;
+
+  private final ByteBuffer buffer;
+  private final int keyframeInterval;
+  private final int indexOffset;
+  private final int gameCount;
+
+  //Maps a whole archive, so it can be at most 2GB
+  public static ReplayArchive open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      //The mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new ReplayArchive(buffer);
+    } finally {
+      channel.close();
+    }
+  }
+
+  public ReplayArchive(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    int end = findEnd(buffer);
+    if (end < 0 || buffer.getInt(0) != MAGIC)
+      throw new IOException("Not a replay archive, or it was never closed");
+    if (buffer.getShort(4) != VERSION)
+      throw new IOException("Replay archive version " + buffer.getShort(4) + " is not supported");
+
+    this.keyframeInterval = buffer.getInt(6);
+    this.indexOffset = (int) buffer.getLong(end - TRAILER_SIZE);
+    this.gameCount = buffer.getInt(end - TRAILER_SIZE + 8);
+  }
+
+  //Where the archive in buffer ends: after the last trailer whose index ends right before it. -1 if there is none.
+  public static int findEnd(ByteBuffer buffer) {
+    for (int end = buffer.limit(); end >= HEADER_SIZE + TRAILER_SIZE; end--) {
+      if (buffer.getInt(end - 4) != MAGIC)
+        continue;
+      long index = buffer.getLong(end - TRAILER_SIZE);
+      int count = buffer.getInt(end - TRAILER_SIZE + 8);
+      if (count >= 0 && index >= HEADER_SIZE && index + (long) count * ENTRY_SIZE + TRAILER_SIZE == end)
+        return end;
+    }
+    return -1;
+  }
+
+  public static void main(String[] args) {
+    if (args.length == 0) {
+      System.out.println("Usage: ReplayArchive archive [replays to add]");
+      return;
+    }
+
+    Path path = Paths.get(args[0]);
+    try {
+      if (args.length > 1) {
+        ReplayArchiveWriter writer = new ReplayArchiveWriter(path);
+        try {
+          for (int i = 1; i < args.length; i++) {
+            writer.append(Replay.read(Paths.get(args[i])));
+          }
+        } finally {
+          writer.close();
+        }
+        System.out.println("Added " + (args.length - 1) + " replays to " + args[0]);
+      }
+
+      ReplayArchive archive = open(path);
+      for (int i = 0; i < archive.getGameCount(); i++) {
+        System.out.println(i + ": " + archive.getName(i) + ", score " + archive.getScore(i) + ", " + archive.getLines(i) + " lines, start level " +
+          archive.getStartLevel(i) + ", " + archive.getFrameCount(i) + " frames");
+      }
+    } catch (IOException e) {
+      System.out.println("Could not use " + args[0] + ": " + e.getMessage());
+    }
+  }
+
+  //The replay of a game, its frames read from the map
+  public Replay getReplay(int game) throws IOException {
+    ByteBuffer replay = buffer.duplicate();
+    replay.limit((int) buffer.getLong(entry(game) + KEYFRAMES));
+    replay.position((int) buffer.getLong(entry(game) + OFFSET));
+    return Replay.read(replay);
+  }
+
+  /*
+   * Returns an engine in the state the game was in before a frame, from the keyframe before it. Play
+   * on from there with ReplayPlayer.play(replay, engine, frame, ...), replay from getReplay(game).
+   */
+  public GameEngine seek(int game, Replay replay, int frame) {
+    int entry = entry(game);
+    int keyframe = Math.min(frame, getFrameCount(game)) / keyframeInterval;
+    ByteBuffer state = buffer.duplicate();
+    state.position((int) buffer.getLong(entry + KEYFRAMES) + keyframe * buffer.getShort(entry + KEYFRAME_SIZE));
+
+    GameEngine engine = new GameEngine(replay.getStartLevel(), replay.createRandomizer());
+    engine.readState(state);
+    ReplayPlayer.play(replay, engine, keyframe * keyframeInterval, frame);
+    return engine;
+  }
+
+  //Offset of the index entry of a game
+  private int entry(int game) {
+    return indexOffset + game * ENTRY_SIZE;
+  }
+
+  // Getters
+  public int getGameCount() {
+    return this.gameCount;
+  }
+
+  public int getKeyframeInterval() {
+    return this.keyframeInterval;
+  }
+
+  public String getName(int game) {
+    byte[] bytes = new byte[NAME_BYTES];
+    ByteBuffer name = buffer.duplicate();
+    name.position(entry(game));
+    name.get(bytes);
+
+    int length = 0;
+    while (length < NAME_BYTES && bytes[length] != 0) {
+      length++;
+    }
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  public int getScore(int game) {
+    return buffer.getInt(entry(game) + SCORE);
+  }
+
+  public int getLines(int game) {
+    return buffer.getInt(entry(game) + LINES);
+  }
+
+  public int getStartLevel(int game) {
+    return buffer.get(entry(game) + START_LEVEL);
+  }
+
+  public int getFrameCount(int game) {
+    return buffer.getInt(entry(game) + FRAME_COUNT);
+  }
+}
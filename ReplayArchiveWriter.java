@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Appends replays to an archive, see ReplayArchive for the format.
+ *
+ * Every replay is played headless once as it is added, for its keyframes and its score. New games
+ * are written after the trailer, so the archive as it was stays whole on disk. The index is kept
+ * in memory and close() writes it and a new trailer after the new games and forces them to disk.
+ * Until then the new games are not part of the archive: if the writer is never closed, readers
+ * and the next writer find the archive as it was before.
+ */
+public class ReplayArchiveWriter {
+
+  private final FileChannel channel;
+  private final int keyframeInterval;
+  private ByteBuffer index;
+  private int gameCount;
+  private long position;  //Where the next game goes
+
+  private final ByteBuffer state;  //One keyframe
+
+  public ReplayArchiveWriter(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.state = ByteBuffer.allocate(1024);
+
+    if (channel.size() == 0) {
+      this.keyframeInterval = ReplayArchive.KEYFRAME_INTERVAL;
+      this.index = ByteBuffer.allocate(64 * ReplayArchive.ENTRY_SIZE);
+      this.gameCount = 0;
+      this.position = ReplayArchive.HEADER_SIZE;
+
+      ByteBuffer header = ByteBuffer.allocate(ReplayArchive.HEADER_SIZE);
+      header.putInt(ReplayArchive.MAGIC);
+      header.putShort(ReplayArchive.VERSION);
+      header.putInt(keyframeInterval);
+      header.flip();
+      write(header, 0);
+    } else {
+      //Adds to the games already there, with their interval. Whatever follows the last trailer was
+      //written by a writer that was not closed, so it is dropped.
+      ByteBuffer header = read(0, ReplayArchive.HEADER_SIZE);
+      long end = channel.size() >= ReplayArchive.HEADER_SIZE ? ReplayArchive.findEnd(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())) : -1;
+      if (end < 0 || header.getInt(0) != ReplayArchive.MAGIC) {
+        channel.close();
+        throw new IOException("Not a replay archive, or it was never closed");
+      }
+      if (header.getShort(4) != ReplayArchive.VERSION) {
+        channel.close();
+        throw new IOException("Replay archive version " + header.getShort(4) + " is not supported");
+      }
+
+      ByteBuffer trailer = read(end - ReplayArchive.TRAILER_SIZE, ReplayArchive.TRAILER_SIZE);
+      this.keyframeInterval = header.getInt(6);
+      this.gameCount = trailer.getInt(8);
+      this.index = ByteBuffer.allocate(Math.max(gameCount * 2, 64) * ReplayArchive.ENTRY_SIZE);
+      this.index.put(read(trailer.getLong(0), gameCount * ReplayArchive.ENTRY_SIZE));
+      channel.truncate(end);
+      this.position = end;
+    }
+  }
+
+  public void append(Replay replay) throws IOException {
+    long offset = position;
+    ByteBuffer game = ByteBuffer.allocate(replay.getHeaderSize() + replay.getFrameCount());
+    replay.writeHeader(game);
+    replay.writeFrames(game);
+    game.flip();
+    write(game, position);
+
+    //Keyframes before frame 0 and every interval after it, up to the last frame
+    long keyframes = position;
+    int keyframeSize = 0;
+    GameEngine engine = new GameEngine(replay.getStartLevel(), replay.createRandomizer());
+    for (int frame = 0; frame <= replay.getFrameCount(); frame += keyframeInterval) {
+      ReplayPlayer.play(replay, engine, Math.max(frame - keyframeInterval, 0), frame);
+      state.clear();
+      engine.writeState(state);
+      state.flip();
+      keyframeSize = state.remaining();
+      write(state, position);
+    }
+    ReplayPlayer.play(replay, engine, replay.getFrameCount() / keyframeInterval * keyframeInterval, replay.getFrameCount());
+
+    if (index.remaining() < ReplayArchive.ENTRY_SIZE) {
+      ByteBuffer larger = ByteBuffer.allocate(index.capacity() * 2);
+      index.flip();
+      larger.put(index);
+      index = larger;
+    }
+    byte[] name = replay.getName().getBytes(StandardCharsets.UTF_8);
+    index.put(name, 0, Math.min(name.length, ReplayArchive.NAME_BYTES));
+    for (int i = name.length; i < ReplayArchive.NAME_BYTES; i++) {
+      index.put((byte) 0);
+    }
+    index.putInt(engine.getScore());
+    index.putInt(engine.getTotalLinesCleared());
+    index.put((byte) replay.getStartLevel());
+    index.putLong(offset);
+    index.putInt(replay.getFrameCount());
+    index.putLong(keyframes);
+    index.putShort((short) keyframeSize);
+    gameCount++;
+  }
+
+  //Writes the index and the trailer after the last game, and waits for them to be on disk
+  public void close() throws IOException {
+    try {
+      index.flip();
+      write(index, position);
+
+      ByteBuffer trailer = ByteBuffer.allocate(ReplayArchive.TRAILER_SIZE);
+      trailer.putLong(position - index.limit());
+      trailer.putInt(gameCount);
+      trailer.putInt(ReplayArchive.MAGIC);
+      trailer.flip();
+      write(trailer, position);
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+
+  //Writes at an offset and moves position past the end
+  private void write(ByteBuffer buffer, long offset) throws IOException {
+    long at = offset;
+    while (buffer.hasRemaining()) {
+      at += channel.write(buffer, at);
+    }
+    position = at;
+  }
+
+  private ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
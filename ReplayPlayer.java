@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/*
+ * Plays replays without the sketch, as fast as the CPU allows.
+ *
+ * The triggers of every frame go through GameEngine.applyInputs, which runs them the way
+ * GameManager.executeFunction does in game, and intense mode switches the fall rate the way
+ * GameManager.changeMode does. The sketch plays replays in real time through executeFunction
+ * itself, see the [Replay] section of config.ini.
+ *
+ * Compile and run from the sketch folder (only the .java tabs are needed):
+ *   javac -d replays *.java
+ *   java -cp replays ReplayPlayer data/replays/*.rpl
+ */
+public class ReplayPlayer {
+
+  public static void main(String[] args) {
+    long frames = 0;
+    long start = System.nanoTime();
+    for (String path : args) {
+      try {
+        Replay replay = Replay.read(Paths.get(path));
+        GameEngine engine = new GameEngine(replay.getStartLevel(), replay.createRandomizer());
+        int played = play(replay, engine, 0, replay.getFrameCount());
+        frames += played;
+        System.out.println(path + ": " + replay.getName() + ", " + played + " frames, score " + engine.getScore() + ", " +
+          engine.getTotalLinesCleared() + " lines, level " + engine.getLevel() + (engine.isGameOver() ? ", topped out" : ""));
+      } catch (IOException e) {
+        System.out.println("Could not read " + path + ": " + e.getMessage());
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(frames + " frames in " + String.format("%.2f", seconds) + "s (" + String.format("%.0f", frames / seconds) + " frames/s)");
+  }
+
+  /*
+   * Plays the frames of a replay from one frame up to another (not included) on an engine in the
+   * state the game was in before the first: made for the replay (its start level and randomizer)
+   * if that is frame 0, or restored from a keyframe. Stops early if the game tops out. Returns the
+   * frame it stopped before.
+   */
+  public static int play(Replay replay, GameEngine engine, int from, int to) {
+    //Intense mode as the frame before left it
+    boolean intense = from == 0 ? replay.isIntense() : (replay.getFrame(from - 1) & Replay.INTENSE) != 0;
+    if (from == 0)
+      engine.setIntenseMode(intense);
+
+    int f = from;
+    for (; f < Math.min(to, replay.getFrameCount()) && !engine.isGameOver(); f++) {
+      int frame = replay.getFrame(f);
+      engine.applyInputs(Replay.getGameTriggers(frame));
+
+      //The music switched intense mode, after the buttons and before the update
+      if (((frame & Replay.INTENSE) != 0) != intense) {
+        intense = !intense;
+        engine.setFallRate(engine.getLevelSpeed(engine.getLevel(), intense));
+      }
+
+      if ((frame & Replay.UPDATED) != 0) {
+        engine.setIntenseMode(intense);
+        engine.update();
+      }
+    }
+    return f;
+  }
+}
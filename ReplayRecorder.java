@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Streams a replay to a file while the game is played. Frames collect in a direct buffer that is
+ * written to the channel when it fills up, about once a minute, and when the recorder is closed.
+ */
+public class ReplayRecorder {
+
+  private static final int BUFFER_SIZE = 4096;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private int frames;
+
+  public ReplayRecorder(Path path, Replay header) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    this.frames = 0;
+    header.writeHeader(this.buffer);
+  }
+
+  //Adds the frame byte of the frame just played, see Replay
+  public void frame(int frame) throws IOException {
+    if (!buffer.hasRemaining())
+      flush();
+    buffer.put((byte) frame);
+    frames++;
+  }
+
+  public void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  public int getFrames() {
+    return this.frames;
+  }
+}
@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Records games the way GameManager does and checks that ReplayPlayer plays them back to the same
+ * state. The player presses random buttons and pauses now and then: UP opens the pause menu, the
+ * buttons after it and every button while it is open go to the menu, and B closes it. A frame
+ * recorded with a menu button in it would be played as a game input, and the replay would end up
+ * somewhere else.
+ *
+ * Compile and run from the sketch folder (only the .java tabs are needed):
+ *   javac -d replays *.java
+ *   java -cp replays ReplayTest
+ */
+public class ReplayTest {
+
+  private static final int UP = 1 << InputType.UP.getIndex();
+  private static final int B = 1 << InputType.B.getIndex();
+
+  public static void main(String[] args) throws IOException {
+    int failed = 0;
+    for (long seed = 0; seed < 20; seed++) {
+      if (!roundTrip(seed)) {
+        System.out.println("Game " + seed + ": the replay did not end in the recorded state");
+        failed++;
+      }
+    }
+    System.out.println(failed == 0 ? "Passed" : "Failed " + failed + " of 20 games");
+    if (failed > 0)
+      System.exit(1);
+  }
+
+  private static boolean roundTrip(long seed) throws IOException {
+    Replay header = new Replay(seed, Randomizer.UNIFORM, 0, false, "TEST");
+    GameEngine game = new GameEngine(header.getStartLevel(), header.createRandomizer());
+    SeededRandom random = new SeededRandom(seed);
+
+    Path path = Files.createTempFile("replay", ".rpl");
+    try {
+      ReplayRecorder recorder = new ReplayRecorder(path, header);
+      boolean inMenu = false;
+      for (int frame = 0; frame < 5000 && !game.isGameOver(); frame++) {
+        int triggers = 0;
+        for (int i = 0; i < InputType.values().length; i++) {
+          if (random.nextInt(inMenu ? 4 : 12) == 0)
+            triggers |= 1 << i;
+        }
+        if (!inMenu && random.nextInt(10) != 0)
+          triggers &= ~UP;
+
+        //GameManager.run: the buttons in index order, UP pauses and B closes the menu
+        boolean paused = inMenu;
+        if (!paused) {
+          game.applyInputs(Replay.getGameTriggers(triggers));
+          inMenu = (triggers & UP) != 0;
+        } else if ((triggers & B) != 0) {
+          inMenu = false;
+        }
+
+        if (inMenu) {
+          if (!paused)
+            recorder.frame(Replay.getRecordedTriggers(triggers, paused));
+        } else {
+          recorder.frame(Replay.getRecordedTriggers(triggers, paused) | Replay.UPDATED);
+          game.update();
+        }
+      }
+      recorder.close();
+
+      Replay replay = Replay.read(path);
+      GameEngine played = new GameEngine(replay.getStartLevel(), replay.createRandomizer());
+      ReplayPlayer.play(replay, played, 0, replay.getFrameCount());
+      return state(played).equals(state(game));
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  private static ByteBuffer state(GameEngine engine) {
+    ByteBuffer buffer = ByteBuffer.allocate(GameSnapshot.MAX_SIZE);
+    engine.writeState(buffer);
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * How long the AI may search for one piece, by difficulty and by game mode.
+ * Attract mode is the AI playing the demo while nobody plays, versus mode is the AI playing
+ * against a person. Budgets are in nanoseconds, 0 lets the search finish every depth.
+ */
+public class SearchBudgets {
+
+  public static final int EASY = 0;
+  public static final int NORMAL = 1;
+  public static final int HARD = 2;
+
+  //Names used in config.ini, in difficulty order
+  public static final String[] DIFFICULTIES = {"easy", "normal", "hard"};
+
+  private final long[] attract;
+  private final long[] versus;
+
+  public SearchBudgets() {
+    this.attract = new long[DIFFICULTIES.length];
+    this.versus = new long[DIFFICULTIES.length];
+  }
+
+  /*
+   * Reads the budgets from a section of an ini file. Keys are the mode followed by the
+   * difficulty, for example attractNormal = 8000000.
+   */
+  public static SearchBudgets load(IniFile config, String section) {
+    SearchBudgets budgets = new SearchBudgets();
+    for (int d = 0; d < DIFFICULTIES.length; d++) {
+      String name = Character.toUpperCase(DIFFICULTIES[d].charAt(0)) + DIFFICULTIES[d].substring(1);
+      budgets.attract[d] = config.getLong(section, "attract" + name, 0);
+      budgets.versus[d] = config.getLong(section, "versus" + name, 0);
+    }
+    return budgets;
+  }
+
+  //Returns NORMAL for a name that is not a difficulty
+  public static int getDifficulty(String name) {
+    for (int d = 0; d < DIFFICULTIES.length; d++) {
+      if (DIFFICULTIES[d].equals(name))
+        return d;
+    }
+    return NORMAL;
+  }
+
+  // Getters
+  public long get(int difficulty, boolean versusMode) {
+    return versusMode ? this.versus[difficulty] : this.attract[difficulty];
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * A lightweight copy of the game used by the AI to try out placements.
+ * It only holds the board and the active piece, so copying one is an array copy of the rows
+ * and never touches assets, effects or the piece queue.
+ */
+public class SearchState {
+
+  private final Board board;
+
+  //Active piece
+  private int type;
+  private int orientation;
+  private int x;
+  private int y;
+  private int next;  //Type of the piece after the active one, -1 when it is not known yet
+
+  public SearchState() {
+    this.board = new Board(GameEngine.WIDTH, GameEngine.HEIGHT);
+  }
+
+  public void copyFrom(GameEngine engine) {
+    this.board.copyFrom(engine.getBoard());
+    this.type = engine.getPieceType().getIndex();
+    this.orientation = engine.getPieceOrientation();
+    this.x = engine.getPieceX();
+    this.y = engine.getPieceY();
+    this.next = engine.getNextType().getIndex();
+  }
+
+  //Copies the position the next piece will spawn into, once the current piece locked and its full rows are cleared
+  public void copyNextSpawnFrom(GameEngine engine) {
+    this.board.copyFrom(engine.getBoard());
+    this.board.clearLines(engine.getLinesToClear());
+    this.type = engine.getNextType().getIndex();
+    this.orientation = 0;
+    this.x = GameEngine.PIECE_SPAWN_X;
+    this.y = GameEngine.PIECE_SPAWN_Y;
+    this.next = -1;
+  }
+
+  public void copyFrom(SearchState other) {
+    this.board.copyFrom(other.board);
+    this.type = other.type;
+    this.orientation = other.orientation;
+    this.x = other.x;
+    this.y = other.y;
+    this.next = other.next;
+  }
+
+  //Rotates the piece the same way a rotation button would. Returns false if the piece could not rotate.
+  public boolean rotate(boolean cw) {
+    int next = PieceShape.nextOrientation(type, orientation, cw);
+    if (next == orientation || board.collides(type, next, x, y))
+      return false;
+
+    orientation = next;
+    return true;
+  }
+
+  //Returns false if the piece could not move
+  public boolean move(int dx, int dy) {
+    if (board.collides(type, orientation, x + dx, y + dy))
+      return false;
+
+    x += dx;
+    y += dy;
+    return true;
+  }
+
+  public void drop() {
+    while (move(0, 1)) {
+    }
+  }
+
+  //Fills the piece's cells. Returns false if part of the piece is above the top of the grid.
+  public boolean lock() {
+    return board.place(type, orientation, x, y);
+  }
+
+  // Getters and setters
+  public Board getBoard() {
+    return this.board;
+  }
+
+  public void setPiece(int type, int orientation, int x, int y) {
+    this.type = type;
+    this.orientation = orientation;
+    this.x = x;
+    this.y = y;
+  }
+
+  public int getType() {
+    return this.type;
+  }
+
+  public int getOrientation() {
+    return this.orientation;
+  }
+
+  public int getX() {
+    return this.x;
+  }
+
+  public int getY() {
+    return this.y;
+  }
+
+  public int getNext() {
+    return this.next;
+  }
+
+  public void setNext(int next) {
+    this.next = next;
+  }
+}
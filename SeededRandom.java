@@ -0,0 +1,43 @@
+/*
+ * The generator of java.util.Random, dealing the same numbers for the same seed, with its state in
+ * the open so a randomizer can be saved mid-game and restored (java.util.Random keeps it private).
+ */
+public final class SeededRandom {
+
+  private static final long MULTIPLIER = 0x5DEECE66DL;
+  private static final long ADDEND = 0xBL;
+  private static final long MASK = (1L << 48) - 1;
+
+  private long state;
+
+  public SeededRandom(long seed) {
+    this.state = (seed ^ MULTIPLIER) & MASK;
+  }
+
+  private int next(int bits) {
+    state = (state * MULTIPLIER + ADDEND) & MASK;
+    return (int) (state >>> (48 - bits));
+  }
+
+  //Same as java.util.Random.nextInt(bound)
+  public int nextInt(int bound) {
+    int r = next(31);
+    int m = bound - 1;
+    if ((bound & m) == 0) {
+      r = (int) ((bound * (long) r) >> 31);
+    } else {
+      for (int u = r; u - (r = u % bound) + m < 0; u = next(31)) {
+      }
+    }
+    return r;
+  }
+
+  // Getters and setters
+  public long getState() {
+    return this.state;
+  }
+
+  public void setState(long state) {
+    this.state = state & MASK;
+  }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Plays games with the AI as fast as the CPU allows, without the sketch: no window, no audio.
+ *
+ * The games run on GameEngine, the rules GridManager plays by, with the AI built from the
+ * config.ini of the sketch like GameManager builds it. The AI plans on the game's thread instead
+ * of the planner thread, so every decision is timed and made before the frame it is needed in.
+ * Intense mode is on for the whole game when asked for, like the always intense cheat codes; the
+ * switches timed by the music are not played.
+ *
+ * Compile and run from the sketch folder (only the .java tabs are needed):
+ *   javac -d simulator *.java
+ *   java -cp simulator Simulator -games 100 -seed 0 -level 10 -intense false
+ */
+public class Simulator {
+
+  //Settings, see parseArgs
+  private int games = 100;
+  private long seed = 0;
+  private int startLevel = 0;
+  private boolean intense = false;
+  private String randomizer = Randomizer.UNIFORM;
+  private int maxPieces = 0;  //0 plays every game to the top out
+  private String data = "data";
+
+  private AI ai;
+  private int frameCount;  //Frames of the game being played
+
+  //Nanoseconds of every AI decision
+  private long[] decisions = new long[1 << 16];
+  private int decisionCount = 0;
+
+  public static void main(String[] args) {
+    Simulator simulator = new Simulator();
+    if (!simulator.parseArgs(args))
+      return;
+
+    AISettings settings = new AISettings();
+    try {
+      settings = AISettings.load(simulator.data);
+    } catch (IOException e) {
+      System.out.println("Could not load " + simulator.data + "/config.ini, using the default AI settings");
+    }
+    settings.setPlanAsync(false);
+    simulator.ai = settings.create();
+    simulator.run();
+  }
+
+  private boolean parseArgs(String[] args) {
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch(args[i]) {
+      case "-games":
+        games = Integer.parseInt(value);
+        break;
+      case "-seed":
+        seed = Long.parseLong(value);
+        break;
+      case "-level":
+        startLevel = Math.max(0, Math.min(Integer.parseInt(value), GameEngine.MAX_LEVEL));
+        break;
+      case "-intense":
+        intense = "true".equals(value);
+        break;
+      case "-randomizer":
+        randomizer = value;
+        break;
+      case "-maxPieces":
+        maxPieces = Integer.parseInt(value);
+        break;
+      case "-data":
+        data = value;
+        break;
+      default:
+        System.out.println("Unknown option " + args[i]);
+        System.out.println("Options: -games -seed -level -intense -randomizer -maxPieces -data");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void run() {
+    long lines = 0;
+    long pieces = 0;
+    long frames = 0;
+
+    long start = System.nanoTime();
+    for (int g = 0; g < games; g++) {
+      GameEngine engine = playGame(seed + g);
+      lines += engine.getTotalLinesCleared();
+      pieces += engine.getPiecesSpawned();
+      frames += frameCount;
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    Arrays.sort(decisions, 0, decisionCount);
+    System.out.println("Games: " + games + " in " + String.format("%.2f", seconds) + "s (" + String.format("%.1f", games / seconds) + " games/s)");
+    System.out.println("Pieces: " + pieces + " (" + String.format("%.0f", pieces / seconds) + " pieces/s, " + String.format("%.0f", frames / seconds) + " frames/s)");
+    System.out.println("Average lines: " + String.format("%.1f", (double) lines / games));
+    System.out.println("AI decision: p50 " + String.format("%.1f", percentile(0.5) / 1e3) + "us, p99 " + String.format("%.1f", percentile(0.99) / 1e3) + "us");
+    System.out.println("Transposition table: " + String.format("%.1f", ai.getTableHitRate() * 100) + "% hit rate");
+  }
+
+  //Plays one game from spawn to top out (or maxPieces) and returns its engine
+  private GameEngine playGame(long gameSeed) {
+    GameEngine engine = new GameEngine(startLevel, Randomizer.create(randomizer, gameSeed));
+    engine.setIntenseMode(intense);
+    engine.setListener(new GameListener() {
+      @Override
+      public void onPieceSpawned() {
+        decide(engine);
+      }
+    });
+    decide(engine);
+
+    frameCount = 0;
+    while (!engine.isGameOver() && (maxPieces == 0 || engine.getPiecesSpawned() < maxPieces)) {
+      //Planned again when the piece left its planned inputs, like GridManager.moveToAITarget
+      if (!engine.hasAIPath())
+        decide(engine);
+      engine.moveToAITarget();
+      engine.update();
+      frameCount++;
+    }
+    return engine;
+  }
+
+  private void decide(GameEngine engine) {
+    long start = System.nanoTime();
+    ai.generateInputQueue(engine);
+    long time = System.nanoTime() - start;
+
+    if (decisionCount == decisions.length)
+      decisions = Arrays.copyOf(decisions, decisions.length * 2);
+    decisions[decisionCount++] = time;
+  }
+
+  //Nearest rank percentile of the sorted decision times, in nanoseconds
+  private long percentile(double p) {
+    if (decisionCount == 0)
+      return 0;
+    int rank = (int) Math.ceil(p * decisionCount);
+    return decisions[Math.max(rank, 1) - 1];
+  }
+}
@@ -8,6 +8,7 @@ void setup() {
   gameManager = new GameManager(this, false);
 
   gameManager.startGame(0);
+  gameManager.resumeSavedGame();
 }
 
 void draw() { 
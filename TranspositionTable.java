@@ -0,0 +1,73 @@
+/*
+ * A fixed size table of search values by Zobrist key, shared by every worker of the AI and kept
+ * between searches.
+ *
+ * Keys go to a bucket of two slots. A key already in the bucket is overwritten. Otherwise the
+ * new value replaces a slot from an older search first, then the slot searched to the lower
+ * depth, so deep values survive while the table keeps filling with new leaves.
+ *
+ * Workers read and write without locks. A slot holds the key XORed with the value bits, so a
+ * slot torn by two writers no longer matches its key and reads as a miss.
+ */
+public class TranspositionTable {
+
+  private final int mask;
+  private final long[] checks;  //key ^ value bits
+  private final long[] values;  //Raw bits of the value
+  private final int[] depths;
+  private final int[] ages;  //Search number of the last write
+
+  //The table holds 2^bits slots
+  public TranspositionTable(int bits) {
+    int size = 1 << bits;
+    this.mask = size - 2;  //Index of the first slot of a bucket
+    this.checks = new long[size];
+    this.values = new long[size];
+    this.depths = new int[size];
+    this.ages = new int[size];
+  }
+
+  //Returns the value stored for key, or NaN if the table does not have it
+  public double probe(long key) {
+    int slot = bucket(key);
+    for (int i = slot; i < slot + 2; i++) {
+      long value = values[i];
+      if ((checks[i] ^ value) == key)
+        return Double.longBitsToDouble(value);
+    }
+    return Double.NaN;
+  }
+
+  public void store(long key, double value, int depth, int age) {
+    int slot = bucket(key);
+    int replace;
+    if ((checks[slot] ^ values[slot]) == key) {
+      replace = slot;
+    } else if ((checks[slot + 1] ^ values[slot + 1]) == key) {
+      replace = slot + 1;
+    } else if (ages[slot] != ages[slot + 1]) {
+      replace = ages[slot] < ages[slot + 1] ? slot : slot + 1;
+    } else {
+      replace = depths[slot] < depths[slot + 1] ? slot : slot + 1;
+    }
+
+    long bits = Double.doubleToRawLongBits(value);
+    values[replace] = bits;
+    checks[replace] = key ^ bits;
+    depths[replace] = depth;
+    ages[replace] = age;
+  }
+
+  public void clear() {
+    for (int i = 0; i < checks.length; i++) {
+      checks[i] = 0;
+      values[i] = 0;
+      depths[i] = 0;
+      ages[i] = 0;
+    }
+  }
+
+  private int bucket(long key) {
+    return (int) (key ^ (key >>> 32)) & mask;
+  }
+}
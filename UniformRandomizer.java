@@ -0,0 +1,34 @@
+import java.nio.ByteBuffer;
+
+//Every type is equally likely every time, like the original game. Long droughts can happen.
+public class UniformRandomizer implements Randomizer {
+
+  private final SeededRandom random;
+
+  public UniformRandomizer(long seed) {
+    this.random = new SeededRandom(seed);
+  }
+
+  @Override
+  public int next() {
+    return random.nextInt(PieceShape.TYPES);
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putLong(random.getState());
+  }
+
+  @Override
+  public boolean checkState(ByteBuffer buffer) {
+    if (buffer.remaining() < 8)
+      return false;
+    buffer.getLong();
+    return true;
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    random.setState(buffer.getLong());
+  }
+}
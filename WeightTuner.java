@@ -0,0 +1,261 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Tunes the weights of the AI's LinearEvaluator by self play, without the sketch.
+ *
+ * Uses the cross-entropy method: every generation, candidate weight vectors are drawn from a
+ * normal distribution per weight, each candidate plays the same seeded games, and the
+ * distribution moves to the mean and spread of the best candidates. Games run on a work stealing
+ * pool with one AI per pool thread. Each generation is appended to a CSV file as it finishes.
+ *
+ * Compile and run from the sketch folder (only the .java tabs are needed):
+ *   javac -d tuner *.java
+ *   java -cp tuner WeightTuner -generations 30 -population 50 -games 8 -out tuning.csv
+ * The best weights found are printed in the [AIWeights] format of config.ini.
+ */
+public class WeightTuner {
+
+  //Settings, see parseArgs
+  private int generations = 30;
+  private int population = 50;
+  private int games = 8;
+  private int maxPieces = 1000;  //Good weights can play forever, so games are cut off
+  private int startLevel = 10;
+  private int lookaheadWidth = 0;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private long seed = 0;
+  private String out = "tuning.csv";
+
+  private final double eliteFraction = 0.2;
+  private final double initialDeviation = 0.5;
+  private final double extraDeviation = 0.05;  //Added to the spread every generation so it does not collapse too early
+
+  //One AI per pool thread, an AI's search buffers can only be used by one thread at a time
+  private final ThreadLocal<AI> ais = ThreadLocal.withInitial(AI::new);
+
+  public static void main(String[] args) {
+    WeightTuner tuner = new WeightTuner();
+    if (!tuner.parseArgs(args))
+      return;
+
+    try {
+      tuner.run();
+    } catch (IOException e) {
+      System.out.println("Could not write " + tuner.out + ": " + e.getMessage());
+    }
+  }
+
+  private boolean parseArgs(String[] args) {
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch(args[i]) {
+      case "-generations":
+        generations = Integer.parseInt(value);
+        break;
+      case "-population":
+        population = Integer.parseInt(value);
+        break;
+      case "-games":
+        games = Integer.parseInt(value);
+        break;
+      case "-maxPieces":
+        maxPieces = Integer.parseInt(value);
+        break;
+      case "-level":
+        startLevel = Math.max(0, Math.min(Integer.parseInt(value), GameEngine.MAX_LEVEL));
+        break;
+      case "-lookahead":
+        lookaheadWidth = Integer.parseInt(value);
+        break;
+      case "-threads":
+        threads = Integer.parseInt(value);
+        break;
+      case "-seed":
+        seed = Long.parseLong(value);
+        break;
+      case "-out":
+        out = value;
+        break;
+      default:
+        System.out.println("Unknown option " + args[i]);
+        System.out.println("Options: -generations -population -games -maxPieces -level -lookahead -threads -seed -out");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void run() throws IOException {
+    Random random = new Random(seed);
+    ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+    int elites = Math.max(1, (int) Math.round(population * eliteFraction));
+
+    double[] mean = new double[BoardFeatures.COUNT];
+    double[] deviation = new double[BoardFeatures.COUNT];
+    LinearEvaluator start = new LinearEvaluator();
+    for (int i = 0; i < BoardFeatures.COUNT; i++) {
+      mean[i] = start.getWeight(i);
+      deviation[i] = initialDeviation;
+    }
+
+    double[][] candidates = new double[population][BoardFeatures.COUNT];
+    int[][] lines = new int[population][games];
+    double[] scores = new double[population];
+    Integer[] order = new Integer[population];
+
+    double[] bestWeights = mean.clone();
+    double bestScore = Double.NEGATIVE_INFINITY;
+
+    PrintWriter csv = new PrintWriter(new FileWriter(out));
+    try {
+      csv.print("generation,best,mean,eliteMean,seconds");
+      for (String name : BoardFeatures.NAMES) {
+        csv.print("," + name);
+      }
+      csv.println();
+
+      long startTime = System.nanoTime();
+      for (int generation = 0; generation < generations; generation++) {
+        for (int c = 0; c < population; c++) {
+          for (int i = 0; i < BoardFeatures.COUNT; i++) {
+            candidates[c][i] = mean[i] + deviation[i] * random.nextGaussian();
+          }
+        }
+
+        //Every candidate plays the same games in a generation, and every generation and -seed new ones
+        pool.invoke(new GenerationTask(candidates, lines, seed + (long) generation * games));
+
+        double total = 0;
+        for (int c = 0; c < population; c++) {
+          scores[c] = 0;
+          for (int g = 0; g < games; g++) {
+            scores[c] += lines[c][g];
+          }
+          scores[c] /= games;
+          total += scores[c];
+          order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        //Refit the distribution to the elites
+        double eliteTotal = 0;
+        for (int i = 0; i < BoardFeatures.COUNT; i++) {
+          double sum = 0;
+          for (int e = 0; e < elites; e++) {
+            sum += candidates[order[e]][i];
+          }
+          mean[i] = sum / elites;
+
+          double variance = 0;
+          for (int e = 0; e < elites; e++) {
+            double d = candidates[order[e]][i] - mean[i];
+            variance += d * d;
+          }
+          deviation[i] = Math.sqrt(variance / elites) + extraDeviation;
+        }
+        for (int e = 0; e < elites; e++) {
+          eliteTotal += scores[order[e]];
+        }
+
+        double generationBest = scores[order[0]];
+        if (generationBest > bestScore) {
+          bestScore = generationBest;
+          bestWeights = candidates[order[0]].clone();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        csv.print(generation + "," + generationBest + "," + (total / population) + "," + (eliteTotal / elites) + "," + seconds);
+        for (int i = 0; i < BoardFeatures.COUNT; i++) {
+          csv.print("," + mean[i]);
+        }
+        csv.println();
+        csv.flush();
+
+        System.out.println("Generation " + generation + ": best " + generationBest + " lines, elite mean " + (eliteTotal / elites) + " (" + Math.round(seconds) + "s)");
+      }
+    } finally {
+      csv.close();
+      pool.shutdown();
+    }
+
+    System.out.println("Best average lines: " + bestScore);
+    System.out.println("[AIWeights]");
+    for (int i = 0; i < BoardFeatures.COUNT; i++) {
+      System.out.println(BoardFeatures.NAMES[i] + " = " + bestWeights[i]);
+    }
+  }
+
+  //Plays one game with the AI and returns the lines it cleared
+  private int playGame(AI ai, long gameSeed) {
+    GameEngine engine = new GameEngine(startLevel, new UniformRandomizer(gameSeed));
+    engine.setListener(new GameListener() {
+      @Override
+      public void onPieceSpawned() {
+        ai.generateInputQueue(engine);
+      }
+    });
+    ai.generateInputQueue(engine);
+
+    while (!engine.isGameOver() && engine.getPiecesSpawned() < maxPieces) {
+      //Planned again when the piece left its planned inputs, like Simulator.playGame
+      if (!engine.hasAIPath())
+        ai.generateInputQueue(engine);
+      engine.moveToAITarget();
+      engine.update();
+    }
+    return engine.getTotalLinesCleared();
+  }
+
+  //Forks one task per game of every candidate, so idle threads steal games from busy ones
+  @SuppressWarnings("serial")
+  private class GenerationTask extends RecursiveAction {
+    private final double[][] candidates;
+    private final int[][] lines;
+    private final long firstSeed;
+
+    public GenerationTask(double[][] candidates, int[][] lines, long firstSeed) {
+      this.candidates = candidates;
+      this.lines = lines;
+      this.firstSeed = firstSeed;
+    }
+
+    @Override
+    protected void compute() {
+      GameTask[] tasks = new GameTask[candidates.length * games];
+      for (int c = 0; c < candidates.length; c++) {
+        LinearEvaluator evaluator = new LinearEvaluator(candidates[c]);
+        for (int g = 0; g < games; g++) {
+          tasks[c * games + g] = new GameTask(evaluator, c, g);
+        }
+      }
+      invokeAll(tasks);
+    }
+
+    @SuppressWarnings("serial")
+    private class GameTask extends RecursiveAction {
+      private final LinearEvaluator evaluator;
+      private final int candidate;
+      private final int game;
+
+      public GameTask(LinearEvaluator evaluator, int candidate, int game) {
+        this.evaluator = evaluator;
+        this.candidate = candidate;
+        this.game = game;
+      }
+
+      @Override
+      protected void compute() {
+        AI ai = ais.get();
+        ai.setEvaluator(evaluator);
+        ai.setLookaheadWidth(lookaheadWidth);
+        lines[candidate][game] = playGame(ai, firstSeed + game);
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+import java.util.Random;
+
+/*
+ * Random keys for Zobrist hashing of AI search states.
+ *
+ * The hash of a board is the XOR of the keys of its filled cells, so setting a cell is one XOR
+ * (see Board). A state with a piece adds the key of the piece's type, orientation and position.
+ * Search values that depend on more than the board add the keys of the lines cleared on the way
+ * and of the search depth. The keys come from a fixed seed, so hashes are the same every run.
+ */
+public final class Zobrist {
+
+  //Boards up to 32 columns and 64 rows
+  private static final int maxWidth = 32;
+  private static final int maxHeight = 64;
+
+  //Piece positions, in the same ranges the MoveGenerator encodes
+  private static final int xOffset = 4;
+  private static final int xRange = 16;
+  private static final int yOffset = 2;
+  private static final int yRange = maxHeight + yOffset;
+
+  private static final int maxLines = 64;
+  private static final int maxDepth = 16;
+
+  private static final long[] cells = new long[maxWidth * maxHeight];
+  private static final long[] pieces = new long[PieceShape.TYPES * PieceShape.ORIENTATIONS * yRange * xRange];
+  private static final long[] lines = new long[maxLines];
+  private static final long[] depths = new long[maxDepth];
+
+  static {
+    Random random = new Random(0x5A17B0B5L);
+    fill(cells, random);
+    fill(pieces, random);
+    fill(lines, random);
+    fill(depths, random);
+
+    //No lines and no depth leave a hash unchanged
+    lines[0] = 0;
+    depths[0] = 0;
+  }
+
+  private Zobrist() {
+  }
+
+  private static void fill(long[] keys, Random random) {
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong();
+    }
+  }
+
+  public static long cell(int x, int y) {
+    return cells[y * maxWidth + x];
+  }
+
+  //XOR of the keys of every cell filled in a row
+  public static long row(int y, int row) {
+    long hash = 0;
+    while (row != 0) {
+      hash ^= cells[y * maxWidth + Integer.numberOfTrailingZeros(row)];
+      row &= row - 1;
+    }
+    return hash;
+  }
+
+  public static long piece(int type, int orientation, int x, int y) {
+    return pieces[((type * PieceShape.ORIENTATIONS + orientation) * yRange + y + yOffset) * xRange + x + xOffset];
+  }
+
+  public static long lines(int count) {
+    return lines[count & (maxLines - 1)];
+  }
+
+  public static long depth(int depth) {
+    return depths[depth & (maxDepth - 1)];
+  }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sketch.AI;
+import sketch.GameEngine;
+import sketch.UniformRandomizer;
+
+/*
+ * A whole AI decision, the search and the inputs that carry it out (AI.generateInputQueue, which
+ * runs getAIResponse). The transposition table is cleared before every call so each one searches
+ * from scratch like a new position would. Clearing it is outside the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AIBenchmark {
+
+  @Param({Corpus.EMPTY, Corpus.MID_GAME, Corpus.NEAR_TOP_OUT})
+  public String corpus;
+
+  @Param({"0", "5"})
+  public int lookaheadWidth;
+
+  private GameEngine engine;
+  private AI ai;
+
+  @Setup
+  public void setup() {
+    engine = new GameEngine(10, new UniformRandomizer(0));
+    Corpus.fill(engine.getBoard(), corpus);
+    ai = new AI();
+    ai.setLookaheadWidth(lookaheadWidth);
+  }
+
+  @Setup(Level.Invocation)
+  public void clearTable() {
+    ai.clearTable();
+  }
+
+  @Benchmark
+  public void aiResponse() {
+    ai.generateInputQueue(engine);
+  }
+}
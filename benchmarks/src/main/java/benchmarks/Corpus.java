@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.util.Random;
+
+import sketch.Board;
+
+/*
+ * The boards the benchmarks run on. Each one is made from a fixed seed, so every run and every
+ * build measures the same positions.
+ *
+ * Rows are filled from the floor up with random cells and at least one gap, so they never clear
+ * and have holes and overhangs like a real stack.
+ */
+public final class Corpus {
+
+  public static final String EMPTY = "empty";
+  public static final String MID_GAME = "midGame";
+  public static final String NEAR_TOP_OUT = "nearTopOut";
+
+  private static final long SEED = 0xB10CL;
+  private static final double DENSITY = 0.7;
+
+  private Corpus() {
+  }
+
+  //Fills board with the corpus board of the given name
+  public static void fill(Board board, String name) {
+    board.clear();
+    int rows = rows(name);
+    Random random = new Random(SEED + rows);
+    for (int y = board.getHeight() - 1; y >= board.getHeight() - rows; y--) {
+      int row = 0;
+      for (int x = 0; x < board.getWidth(); x++) {
+        if (random.nextDouble() < DENSITY)
+          row |= 1 << x;
+      }
+      if (row == board.getFullRow())
+        row &= ~(1 << random.nextInt(board.getWidth()));
+      board.setRow(y, row);
+    }
+  }
+
+  //Rows filled by a corpus board, out of the 24 of the grid
+  private static int rows(String name) {
+    switch(name) {
+    case EMPTY:
+      return 0;
+    case MID_GAME:
+      return 8;
+    case NEAR_TOP_OUT:
+      return 17;
+    default:
+      throw new IllegalArgumentException("Unknown corpus " + name);
+    }
+  }
+}
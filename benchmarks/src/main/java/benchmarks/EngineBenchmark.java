@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sketch.Board;
+import sketch.GameEngine;
+import sketch.PieceShape;
+import sketch.PieceType;
+import sketch.SearchState;
+import sketch.UniformRandomizer;
+
+/*
+ * The game rules every frame and every AI search run: collision tests, rotation and line clears.
+ * These used to be GridManager.checkCollisions, checkRotationCollision, checkLines/clearLines and
+ * Piece.rotate, and now live in Board, GameEngine and SearchState.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+  @Param({Corpus.EMPTY, Corpus.MID_GAME, Corpus.NEAR_TOP_OUT})
+  public String corpus;
+
+  private GameEngine engine;
+  private SearchState state;
+  private Board lines;  //The corpus board with its four bottom rows full
+  private Board scratch;
+  private int type;
+
+  @Setup
+  public void setup() {
+    engine = new GameEngine(0, new UniformRandomizer(0));
+    Corpus.fill(engine.getBoard(), corpus);
+
+    state = new SearchState();
+    state.copyFrom(engine);
+    state.setPiece(PieceType.T.getIndex(), 0, GameEngine.PIECE_SPAWN_X, GameEngine.PIECE_SPAWN_Y);
+
+    lines = new Board(GameEngine.WIDTH, GameEngine.HEIGHT);
+    Corpus.fill(lines, corpus);
+    for (int y = GameEngine.HEIGHT - 4; y < GameEngine.HEIGHT; y++) {
+      lines.setRow(y, lines.getFullRow());
+    }
+    scratch = new Board(GameEngine.WIDTH, GameEngine.HEIGHT);
+    type = 0;
+  }
+
+  //One piece type in every orientation, column and row, the positions a move search tests
+  @Benchmark
+  public int collisions() {
+    Board board = engine.getBoard();
+    int collisions = 0;
+    type = (type + 1) % PieceShape.TYPES;
+    for (int o = 0; o < PieceShape.ORIENTATIONS; o++) {
+      for (int y = -2; y < GameEngine.HEIGHT; y++) {
+        for (int x = -2; x < GameEngine.WIDTH; x++) {
+          if (board.collides(type, o, x, y))
+            collisions++;
+        }
+      }
+    }
+    return collisions;
+  }
+
+  @Benchmark
+  public boolean rotationCollision() {
+    return engine.checkRotationCollision(true) | engine.checkRotationCollision(false);
+  }
+
+  //Includes copying the board, so the rows are there to clear every time
+  @Benchmark
+  public int clearLines() {
+    scratch.copyFrom(lines);
+    return scratch.clearLines(scratch.getFullLines());
+  }
+
+  //A T piece at the spawn turning clockwise, through all four orientations
+  @Benchmark
+  public boolean rotate() {
+    return state.rotate(true);
+  }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sketch.BoardFeatures;
+import sketch.GameEngine;
+import sketch.MoveGenerator;
+import sketch.SearchState;
+import sketch.UniformRandomizer;
+
+//The parts of an AI search that run for every placement: the move generator and the board features
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureBenchmark {
+
+  @Param({Corpus.EMPTY, Corpus.MID_GAME, Corpus.NEAR_TOP_OUT})
+  public String corpus;
+
+  private SearchState state;
+  private MoveGenerator moveGenerator;
+  private BoardFeatures features;
+
+  @Setup
+  public void setup() {
+    GameEngine engine = new GameEngine(0, new UniformRandomizer(0));
+    Corpus.fill(engine.getBoard(), corpus);
+    state = new SearchState();
+    state.copyFrom(engine);
+    moveGenerator = new MoveGenerator();
+    features = new BoardFeatures();
+  }
+
+  @Benchmark
+  public double features() {
+    features.compute(state.getBoard());
+    return features.get(BoardFeatures.HEIGHT);
+  }
+
+  @Benchmark
+  public int moveGeneration() {
+    return moveGenerator.generate(state);
+  }
+}